@@ -0,0 +1,58 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures opening a file in a fresh JVM, with and without the binary snapshot.
+ * Every fork generates the file, and with {@code snapshot=true} opens it once to write the snapshot,
+ * then each measured invocation opens it again without warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = "-Xmx4g")
+public class ColdStartBenchmark {
+
+    @Param({"50MB"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private Path file;
+    private PottySnakeOptions options;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate(size);
+        options = PottySnakeOptions.builder()
+                .snapshot(snapshot)
+                .normalizeOnOpen(false)
+                .build();
+        if (snapshot) {
+            new PottySnake(file.toString(), options).close(); // Writes the snapshot, close waits for it
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + ".psnap"));
+    }
+
+    @Benchmark
+    public PottySnake open() throws IOException {
+        try (PottySnake pottySnake = new PottySnake(file.toString(), options)) {
+            return pottySnake;
+        }
+    }
+}
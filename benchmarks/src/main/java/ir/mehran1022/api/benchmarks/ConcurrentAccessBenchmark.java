@@ -0,0 +1,61 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.KeyPath;
+import ir.mehran1022.api.PottySnake;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures readers and writers sharing one instance in thread-safe mode.
+ * The readers always read {@code section0}, the writer writes either the same section or another one.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentAccessBenchmark {
+
+    @Param({"1KB", "100KB"})
+    public String size;
+
+    @Param({"section0", "section1"})
+    public String writeSection;
+
+    private Path file;
+    private PottySnake pottySnake;
+    private KeyPath writeKey;
+    private int counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate(size);
+        pottySnake = new PottySnake(file.toString(), true);
+        writeKey = KeyPath.of(writeSection + ".key2");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Object read() {
+        return pottySnake.getEntry("section0.key1");
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void write() throws IOException {
+        pottySnake.setEntry(writeKey, counter++);
+    }
+}
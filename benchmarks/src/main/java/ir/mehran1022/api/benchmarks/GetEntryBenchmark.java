@@ -0,0 +1,62 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.InMemoryMetrics;
+import ir.mehran1022.api.KeyPath;
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getEntry for keys from one to ten segments deep, with String keys and compiled paths,
+ * and with {@code metrics=true} what recording every lookup into {@link InMemoryMetrics} adds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetEntryBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Path file;
+    private PottySnake pottySnake;
+    private String key;
+    private KeyPath path;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate("100KB");
+        pottySnake = new PottySnake(file.toString(), PottySnakeOptions.builder()
+                .metrics(metrics ? new InMemoryMetrics() : PottySnakeOptions.defaults().getMetrics())
+                .build());
+        key = YamlFiles.keyAtDepth(depth);
+        path = KeyPath.of(key);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object stringKey() {
+        return pottySnake.getEntry(key);
+    }
+
+    @Benchmark
+    public Object compiledPath() {
+        return pottySnake.getEntry(path);
+    }
+}
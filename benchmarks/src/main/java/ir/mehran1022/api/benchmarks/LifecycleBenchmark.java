@@ -0,0 +1,62 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.PottySnake;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures constructing an instance, load() and save() across file sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LifecycleBenchmark {
+
+    @Param({"1KB", "100KB", "10MB", "100MB"})
+    public String size;
+
+    private Path file;
+    private PottySnake pottySnake;
+    private long revision;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate(size);
+        pottySnake = new PottySnake(file.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public PottySnake construct() throws IOException {
+        try (PottySnake constructed = new PottySnake(file.toString())) {
+            return constructed;
+        }
+    }
+
+    @Benchmark
+    public void load() throws IOException {
+        pottySnake.load();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        // Changed in place, save() dumps the whole data, so an unchanged file never skips the write
+        @SuppressWarnings("unchecked")
+        Map<String, Object> level2 = (Map<String, Object>) pottySnake.getEntry("level2");
+        level2.put("revision", ++revision);
+        pottySnake.save();
+    }
+}
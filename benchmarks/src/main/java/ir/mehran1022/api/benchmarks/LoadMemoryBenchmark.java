@@ -0,0 +1,107 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the peak heap of loading a file, which parses it while reading it, against reading the file into
+ * a String first and parsing that, as loads did before. The peak is the sum of the peaks of every heap pool
+ * during one invocation that started after a full GC, reported in MB next to the time. The young generation
+ * is kept small, so the peak is close to the peak of live data rather than the size of eden. The
+ * {@code non-latin1} values cannot be compact strings, so the String read first takes two bytes per char.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Xmn64m", "-XX:+UseSerialGC"})
+public class LoadMemoryBenchmark {
+
+    @Param({"100MB"})
+    public String size;
+
+    @Param({"ascii", "non-latin1"})
+    public String values;
+
+    private Path file;
+    private PottySnakeOptions options;
+    private LoaderOptions loaderOptions;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate(size, values.equals("non-latin1"));
+        options = PottySnakeOptions.builder()
+                .normalizeOnOpen(false)
+                .build();
+        loaderOptions = new LoaderOptions();
+        loaderOptions.setCodePointLimit(Integer.MAX_VALUE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public PottySnake load(PeakHeap peakHeap) throws IOException {
+        peakHeap.start();
+        try (PottySnake pottySnake = new PottySnake(file.toString(), options)) {
+            peakHeap.stop();
+            return pottySnake;
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> readString(PeakHeap peakHeap) throws IOException {
+        peakHeap.start();
+        Map<String, Object> data = new Yaml(loaderOptions).load(Files.readString(file));
+        peakHeap.stop();
+        return data;
+    }
+
+    /**
+     * The peak heap of the invocation. Events are summed over iterations and forks, so there is one of each.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PeakHeap {
+
+        private static final List<MemoryPoolMXBean> POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+
+        public double peakHeapMB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            peakHeapMB = 0;
+        }
+
+        void start() {
+            System.gc(); // Leaves the previous invocation's data out of the peak
+            POOLS.forEach(MemoryPoolMXBean::resetPeakUsage);
+        }
+
+        void stop() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : POOLS) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            peakHeapMB = Math.max(peakHeapMB, peak / (1024.0 * 1024.0));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.DurabilityPolicy;
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a save under each {@link DurabilityPolicy}.
+ * The difference between the policies depends heavily on the disk, run it on the hardware that matters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveDurabilityBenchmark {
+
+    @Param({"NONE", "FSYNC_FILE", "FSYNC_FILE_AND_DIR"})
+    public DurabilityPolicy durability;
+
+    @Param({"100", "10000"})
+    public int entries;
+
+    private Path directory;
+    private PottySnake pottySnake;
+    private long revision;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("potty-snake");
+        Path file = directory.resolve("config.yml");
+        StringBuilder content = new StringBuilder("section:\n");
+        for (int i = 0; i < entries; i++) {
+            content.append("    key").append(i).append(": value").append(i).append('\n');
+        }
+        Files.writeString(file, content);
+        pottySnake = new PottySnake(file.toString(), PottySnakeOptions.builder().durability(durability).build());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(Path.of(pottySnake.getFilePath()));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        // Changed in place, save() dumps the whole data, so an unchanged file never skips the write
+        @SuppressWarnings("unchecked")
+        Map<String, Object> section = (Map<String, Object>) pottySnake.getEntry("section");
+        section.put("revision", ++revision);
+        pottySnake.save();
+    }
+}
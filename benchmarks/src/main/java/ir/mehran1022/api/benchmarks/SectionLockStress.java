@@ -0,0 +1,176 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A stress test of thread-safe instances under parallel writers, not a benchmark:
+ * {@code java -cp target/benchmarks.jar ir.mehran1022.api.benchmarks.SectionLockStress [seconds] [readers] [writers]}.
+ *
+ * <p>Every counter writer increments a counter in a section of its own and one shared by all of them. Another
+ * writer keeps adding and removing keys in the readers' sections and top-level keys next to them, so the maps
+ * the readers walk are resized under them. Readers check that a counter is never missing and never goes
+ * backwards, that a churned key is either absent or holds the value written for it, and that no read throws.
+ * Once the writers stop, every counter must hold exactly the increments made to it, in memory and in the file
+ * written on close. The first violation is printed and exits with status 1.</p>
+ */
+public final class SectionLockStress {
+
+    // Few sections, so readers keep meeting the writers on the same stripes
+    private static final int SECTIONS = 4;
+    private static final int CHURNED_KEYS = 512;
+
+    private static final AtomicReference<String> FAILURE = new AtomicReference<>();
+
+    private SectionLockStress() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors() - 4);
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        Path file = Files.createTempFile("potty-snake-stress", ".yml");
+        StringBuilder content = new StringBuilder();
+        for (int section = 0; section < SECTIONS; section++) {
+            content.append("s").append(section).append(":\n    counter: 0\n");
+        }
+        Files.writeString(file, content);
+
+        PottySnakeOptions options = PottySnakeOptions.builder()
+                .threadSafe(true)
+                .flushInterval(Duration.ofDays(1)) // Write-behind, mutations do not dump
+                .build();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        AtomicLongArray increments = new AtomicLongArray(writers);
+
+        try {
+            try (PottySnake pottySnake = new PottySnake(file.toString(), options)) {
+                List<Thread> threads = new ArrayList<>();
+                for (int writer = 0; writer < writers; writer++) {
+                    int own = writer;
+                    threads.add(new Thread(() -> run(deadline, () -> {
+                        pottySnake.incrementAndGet("w" + own + ".counter", 1);
+                        pottySnake.incrementAndGet("shared.counter", 1);
+                        pottySnake.incrementAndGet("s" + own % SECTIONS + ".counter", 1);
+                        increments.incrementAndGet(own);
+                        writes.addAndGet(3);
+                    }), "stress-writer-" + writer));
+                }
+                threads.add(new Thread(() -> run(deadline, () -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int key = random.nextInt(CHURNED_KEYS);
+                    String section = "s" + random.nextInt(SECTIONS);
+                    if (random.nextBoolean()) {
+                        pottySnake.setEntry(section + ".k" + key, key);
+                        pottySnake.setEntry("top" + key, key);
+                    } else {
+                        pottySnake.removeEntry(section + ".k" + key);
+                        pottySnake.removeEntry("top" + key);
+                    }
+                    writes.addAndGet(2);
+                }), "stress-churn"));
+                for (int reader = 0; reader < readers; reader++) {
+                    long[] lastSeen = new long[SECTIONS];
+                    threads.add(new Thread(() -> run(deadline, () -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        int section = random.nextInt(SECTIONS);
+                        Object counter = pottySnake.getEntry("s" + section + ".counter");
+                        if (!(counter instanceof Number) || ((Number) counter).longValue() < lastSeen[section]) {
+                            fail("s" + section + ".counter read " + counter + " after " + lastSeen[section]);
+                        } else {
+                            lastSeen[section] = ((Number) counter).longValue();
+                        }
+                        int key = random.nextInt(CHURNED_KEYS);
+                        check(section + ".k" + key, pottySnake.getEntry("s" + section + ".k" + key), key);
+                        check("top" + key, pottySnake.getEntry("top" + key), key);
+                        reads.addAndGet(3);
+                    }), "stress-reader-" + reader));
+                }
+
+                threads.forEach(Thread::start);
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                if (FAILURE.get() == null) {
+                    checkCounters(pottySnake, increments, "in memory");
+                }
+            }
+            if (FAILURE.get() == null) {
+                try (PottySnake reloaded = new PottySnake(file.toString())) {
+                    checkCounters(reloaded, increments, "in the file");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        if (FAILURE.get() != null) {
+            System.err.println("FAILED: " + FAILURE.get());
+            System.exit(1);
+        }
+        System.out.println("OK: " + reads.get() + " reads, " + writes.get() + " writes, " + readers + " readers, "
+                + writers + " counter writers, " + seconds + " s");
+    }
+
+    // Every increment a writer made must have landed, none lost to a concurrent one
+    private static void checkCounters(PottySnake pottySnake, AtomicLongArray increments, String where) {
+        long total = 0;
+        long[] perSection = new long[SECTIONS];
+        for (int writer = 0; writer < increments.length(); writer++) {
+            total += increments.get(writer);
+            perSection[writer % SECTIONS] += increments.get(writer);
+            checkCounter(pottySnake, "w" + writer + ".counter", increments.get(writer), where);
+        }
+        checkCounter(pottySnake, "shared.counter", total, where);
+        for (int section = 0; section < SECTIONS; section++) {
+            checkCounter(pottySnake, "s" + section + ".counter", perSection[section], where);
+        }
+    }
+
+    private static void checkCounter(PottySnake pottySnake, String key, long expected, String where) {
+        Object value = pottySnake.getEntry(key);
+        long actual = value instanceof Number ? ((Number) value).longValue() : 0;
+        if (actual != expected) {
+            fail(key + " is " + value + " " + where + ", " + expected + " increments were made");
+        }
+    }
+
+    private static void check(String key, Object value, int expected) {
+        if (value != null && !Integer.valueOf(expected).equals(value)) {
+            fail(key + " read " + value + ", only " + expected + " is ever written");
+        }
+    }
+
+    private static void fail(String message) {
+        FAILURE.compareAndSet(null, message);
+    }
+
+    // Repeats a step until the deadline or the first failure, a thrown exception is a failure too
+    private static void run(long deadline, Step step) {
+        try {
+            while (FAILURE.get() == null && System.nanoTime() < deadline) {
+                step.run();
+            }
+        } catch (Throwable e) {
+            fail(Thread.currentThread().getName() + " threw " + e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,58 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.PottySnake;
+import ir.mehran1022.api.PottySnakeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures setEntry when every call rewrites the file, when the journal appends a record,
+ * and in memory only, with write-behind deferring the save past the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetEntryBenchmark {
+
+    @Param({"1KB", "100KB", "1MB"})
+    public String size;
+
+    @Param({"WRITE_THROUGH", "JOURNAL", "IN_MEMORY"})
+    public String persistence;
+
+    private Path file;
+    private PottySnake pottySnake;
+    private int counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = YamlFiles.generate(size);
+        PottySnakeOptions.PottySnakeOptionsBuilder options = PottySnakeOptions.builder();
+        if (persistence.equals("JOURNAL")) {
+            options.journal(true);
+        } else if (persistence.equals("IN_MEMORY")) {
+            options.flushInterval(Duration.ofDays(1));
+        }
+        pottySnake = new PottySnake(file.toString(), options.build());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + ".journal"));
+    }
+
+    @Benchmark
+    public void setEntry() throws IOException {
+        pottySnake.setEntry("section0.key" + (counter++ & 63), counter);
+    }
+}
@@ -0,0 +1,57 @@
+package ir.mehran1022.api.benchmarks;
+
+import ir.mehran1022.api.KeyPath;
+import ir.mehran1022.api.PottySnake;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the typed primitive getters with casting and unboxing the result of getEntry.
+ * Run with {@code -prof gc} to see the allocation rate of each variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedGetterBenchmark {
+
+    private static final String KEY = "server.http.port";
+    private static final KeyPath PATH = KeyPath.of(KEY);
+
+    private Path file;
+    private PottySnake pottySnake;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("potty-snake", ".yml");
+        Files.writeString(file, "server:\n    http:\n        port: 8080\n        timeout: 2.5\n");
+        pottySnake = new PottySnake(file.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pottySnake.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int castGetEntry() {
+        return (Integer) pottySnake.getEntry(KEY);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return pottySnake.getInt(KEY, 0);
+    }
+
+    @Benchmark
+    public int getIntCompiledPath() {
+        return pottySnake.getInt(PATH, 0);
+    }
+}
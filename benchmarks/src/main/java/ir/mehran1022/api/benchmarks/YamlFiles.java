@@ -0,0 +1,102 @@
+package ir.mehran1022.api.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Generates YAML files of a given size for the benchmarks.
+ *
+ * <p>Every file starts with a chain of nested maps ten levels deep, where level {@code n} holds a
+ * scalar {@code leaf} and the map {@code level<n + 1>}, see {@link #keyAtDepth(int)}. The rest of the
+ * file is filled with top-level sections of 50 scalar entries each until the size is reached.</p>
+ *
+ * <p>Values are ASCII unless asked otherwise. Non-Latin-1 values cannot be stored as compact Latin-1
+ * strings, so they take two bytes per char in memory.</p>
+ */
+final class YamlFiles {
+
+    static final int MAX_DEPTH = 10;
+
+    private YamlFiles() {
+    }
+
+    /**
+     * Writes a new temp file of roughly the given size.
+     *
+     * @param size A size such as {@code 1KB}, {@code 10MB} or {@code 100MB}.
+     * @return The generated file, the caller deletes it.
+     */
+    static Path generate(String size) throws IOException {
+        return generate(size, false);
+    }
+
+    /**
+     * Writes a new temp file of roughly the given size in UTF-8.
+     *
+     * @param size      A size such as {@code 1KB}, {@code 10MB} or {@code 100MB}.
+     * @param nonLatin1 If true, the values of the sections contain characters outside Latin-1.
+     * @return The generated file, the caller deletes it.
+     */
+    static Path generate(String size, boolean nonLatin1) throws IOException {
+        long target = parseSize(size);
+        String valuePrefix = nonLatin1 ? "值-" : "value-";
+        Path file = Files.createTempFile("potty-snake-" + size, ".yml");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            for (int level = 1; level <= MAX_DEPTH; level++) {
+                String indent = "    ".repeat(level - 1);
+                String line = indent + "leaf: " + level + "\n";
+                writer.write(line);
+                written += line.length();
+                if (level < MAX_DEPTH) {
+                    line = indent + "level" + (level + 1) + ":\n";
+                    writer.write(line);
+                    written += line.length();
+                }
+            }
+
+            for (int section = 0; written < target; section++) {
+                String line = "section" + section + ":\n";
+                writer.write(line);
+                written += line.length();
+                for (int entry = 0; entry < 50 && written < target; entry++) {
+                    line = "    key" + entry + ": " + valuePrefix + section + "-" + entry + "\n";
+                    writer.write(line);
+                    written += line.getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns a key with the given number of segments that resolves to a scalar in every generated file.
+     *
+     * @param depth The number of segments, from 1 to {@link #MAX_DEPTH}.
+     */
+    static String keyAtDepth(int depth) {
+        StringBuilder key = new StringBuilder();
+        for (int level = 2; level <= depth; level++) {
+            key.append("level").append(level).append('.');
+        }
+        return key.append("leaf").toString();
+    }
+
+    private static long parseSize(String size) {
+        String unit = size.replaceAll("[0-9]", "").toUpperCase(Locale.ROOT);
+        long amount = Long.parseLong(size.replaceAll("[^0-9]", ""));
+        switch (unit) {
+            case "KB":
+                return amount * 1024;
+            case "MB":
+                return amount * 1024 * 1024;
+            default:
+                return amount;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes files through a sibling temp file that is renamed over the target,
+ * so a crash or a concurrent reader never observes a half-written file.
+ *
+ * @author Mehran1022
+ */
+final class AtomicFiles {
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Replaces the content of the target file.
+     *
+     * @param target     The file to replace, symbolic links are followed.
+     * @param content    The new content.
+     * @param durability The policy deciding what is forced to disk.
+     * @throws IOException If the temp file cannot be written or moved.
+     */
+    static void write(Path target, byte[] content, DurabilityPolicy durability) throws IOException {
+        target = target.toAbsolutePath();
+        if (Files.isSymbolicLink(target)) {
+            target = target.toRealPath(); // Replace the linked file, not the link itself
+        }
+        Path directory = target.getParent();
+        Path temp = createTemp(directory, target.getFileName());
+
+        try {
+            copyPermissions(target, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (durability != DurabilityPolicy.NONE) {
+                    channel.force(true);
+                }
+            }
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp); // Only still there if writing or moving failed
+        }
+
+        if (durability == DurabilityPolicy.FSYNC_FILE_AND_DIR) {
+            forceDirectory(directory);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates an empty temp file next to the target. Unlike {@link Files#createTempFile}, which creates it
+     * owner-only, it gets the permissions of any new file, so a target created by the first save follows the umask.
+     */
+    private static Path createTemp(Path directory, Path fileName) throws IOException {
+        while (true) {
+            Path temp = directory.resolve("." + fileName + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Taken by another writer, pick another name
+            }
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        // Keep whatever the replaced file allowed, the temp file only has the default permissions
+        if (Files.exists(from)) {
+            try {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, nothing to copy
+            }
+        }
+    }
+
+    private static void forceDirectory(Path directory) throws IOException {
+        if (WINDOWS) {
+            return; // Directories cannot be opened as channels, NTFS journals the rename itself
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ir.mehran1022.api;
+
+import java.util.List;
+
+/**
+ * Receives the changes below a key prefix, registered with {@link PottySnake#subscribe(String, ChangeListener)}.
+ *
+ * @author Mehran1022
+ */
+@FunctionalInterface
+public interface ChangeListener {
+
+    /**
+     * Called on the instance's executor after a mutation, batch or reload changed entries below the prefix.
+     * All changes of a batch or reload arrive in a single call.
+     *
+     * @param changes The changed entries, never empty.
+     */
+    void onChange(List<EntryChange> changes);
+}
@@ -0,0 +1,39 @@
+package ir.mehran1022.api;
+
+/**
+ * What a save does when the file was changed by someone else, e.g. another process, since this instance
+ * last read or wrote it. The change is detected by the file's modification time and size, confirmed by its
+ * SHA-256, so touching a file without changing its content is no conflict. Combine a policy other than
+ * {@link #OVERWRITE} with {@link PottySnakeOptions#isFileLock()}, otherwise another process can still write
+ * between the check and the write.
+ *
+ * @author Mehran1022
+ */
+public enum ConflictPolicy {
+
+    /**
+     * Writes the in-memory data over whatever the file holds, the last writer wins.
+     * The default, and the only policy that never reads the file back before writing it.
+     */
+    OVERWRITE,
+
+    /**
+     * Leaves the file untouched and fails the save with a {@link FileConflictException}.
+     * The instance stays dirty, {@link PottySnake#load()} takes the other version.
+     */
+    FAIL,
+
+    /**
+     * Reloads the file and replays the mutations made since the last save on top of it, in order.
+     * Values computed by the atomic operations are replayed as computed, and changes made directly to maps
+     * or lists returned by {@link PottySnake#getEntry(String)} are not replayed.
+     */
+    RELOAD_AND_REAPPLY,
+
+    /**
+     * Merges both versions with the content this instance last read or wrote as the common base.
+     * Maps are merged key by key, any other entry takes the version of the side that changed it,
+     * or the in-memory one if both did. The base is kept in memory, about the size of the file.
+     */
+    MERGE
+}
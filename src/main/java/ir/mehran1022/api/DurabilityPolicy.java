@@ -0,0 +1,29 @@
+package ir.mehran1022.api;
+
+/**
+ * How hard {@link PottySnake#save()} works to make a write survive a crash or power loss.
+ * Every policy replaces the file atomically, so readers see either the old or the new content;
+ * the policies only differ in when the new content is guaranteed to be on disk.
+ *
+ * @author Mehran1022
+ */
+public enum DurabilityPolicy {
+
+    /**
+     * Leaves flushing to the operating system.
+     * The fastest policy, a crash can lose the latest saves but never leaves a truncated file.
+     */
+    NONE,
+
+    /**
+     * Forces the new content to disk before it replaces the file.
+     * After a crash the file holds either the old or the new content, but the rename itself may be lost.
+     */
+    FSYNC_FILE,
+
+    /**
+     * Forces the new content to disk and then the directory entry of the rename.
+     * The slowest policy, once save returns the new content survives a crash.
+     */
+    FSYNC_FILE_AND_DIR
+}
@@ -0,0 +1,33 @@
+package ir.mehran1022.api;
+
+import lombok.Getter;
+
+/**
+ * A single entry that changed, as delivered to a {@link ChangeListener}.
+ * A null value means the entry did not exist, or was null.
+ *
+ * @author Mehran1022
+ */
+@Getter
+public final class EntryChange {
+
+    // The dot-notation key of the entry
+    private final String key;
+
+    // The value before the change
+    private final Object oldValue;
+
+    // The value after the change
+    private final Object newValue;
+
+    EntryChange(String key, Object oldValue, Object newValue) {
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    @Override
+    public String toString() {
+        return key + ": " + oldValue + " -> " + newValue;
+    }
+}
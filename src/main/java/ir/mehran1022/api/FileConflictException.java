@@ -0,0 +1,23 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a save under {@link ConflictPolicy#FAIL} when the file was changed by someone else
+ * since the instance last read or wrote it. The file is left as the other writer left it.
+ *
+ * @author Mehran1022
+ */
+public class FileConflictException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new exception for the given file.
+     *
+     * @param filePath The path to the YAML file that changed.
+     */
+    public FileConflictException(String filePath) {
+        super(filePath + " was changed by someone else since it was last read or written");
+    }
+}
@@ -0,0 +1,247 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the PottySnake instances opened with {@link PottySnakeOptions#isWatch()} when their file changes on disk.
+ * A single daemon thread serves every instance: it waits on a {@link WatchService} for the watched directories,
+ * and polls the modification time and size of files whose directory cannot be watched natively.
+ *
+ * <p>Changes are debounced per file, so an editor writing a file in several steps causes one reload once the
+ * file was quiet for the debounce interval. The reload runs on the instance's executor and compares the file
+ * with what the instance last read or wrote, so the instance's own saves never reload it.</p>
+ *
+ * @author Mehran1022
+ */
+final class FileWatcher {
+
+    // How often unwatchable files are polled, also the longest the thread waits between checks
+    private static final long POLL_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // Null if the file system offers no watch service, every file is polled then
+    private final WatchService watchService;
+
+    // The native watch of every directory holding a watched file
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private FileWatcher() {
+        WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            service = null;
+        }
+        this.watchService = service;
+
+        Thread thread = new Thread(this::run, "PottySnake-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the watcher shared by every instance, starting its thread on first use.
+     */
+    static FileWatcher shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Starts watching the file of an instance.
+     *
+     * @param pottySnake The instance to reload, it is only weakly referenced.
+     * @param debounce   How long the file has to be quiet before the instance is reloaded.
+     * @return The registration to pass to {@link #unregister(Registration)}.
+     */
+    synchronized Registration register(PottySnake pottySnake, Duration debounce) {
+        Path file = Path.of(pottySnake.getFilePath()).toAbsolutePath().normalize();
+        Path directory = file.getParent();
+
+        boolean polled = watchService == null;
+        if (!polled && !watchKeys.containsKey(directory)) {
+            try {
+                watchKeys.put(directory, directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            } catch (IOException | UnsupportedOperationException e) {
+                polled = true; // E.g. a network mount, fall back to polling this file
+            }
+        }
+
+        Registration registration = new Registration(pottySnake, directory, file, debounce.toNanos(), polled);
+        if (polled) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                registration.lastModified = attributes.lastModifiedTime();
+                registration.size = attributes.size();
+            } catch (IOException e) {
+                // Not created yet, the first poll that finds it reloads
+            }
+        }
+        registrations.add(registration);
+        return registration;
+    }
+
+    /**
+     * Stops watching the file of an instance.
+     *
+     * @param registration The registration returned by {@link #register(PottySnake, Duration)}.
+     */
+    synchronized void unregister(Registration registration) {
+        registrations.remove(registration);
+        if (registrations.stream().noneMatch(other -> other.directory.equals(registration.directory))) {
+            WatchKey key = watchKeys.remove(registration.directory);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+
+    private void run() {
+        long nextPoll = System.nanoTime() + POLL_INTERVAL;
+        while (true) {
+            try {
+                long now = System.nanoTime();
+                long timeout = Math.max(0, Math.min(nextPoll, nextDeadline(nextPoll)) - now);
+                if (watchService == null) {
+                    TimeUnit.NANOSECONDS.sleep(timeout);
+                } else {
+                    WatchKey key = watchService.poll(timeout, TimeUnit.NANOSECONDS);
+                    if (key != null) {
+                        handle(key);
+                    }
+                }
+
+                now = System.nanoTime();
+                if (now - nextPoll >= 0) {
+                    poll(now);
+                    nextPoll = now + POLL_INTERVAL;
+                }
+                fire(now);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("problem with I/O process \n" + Arrays.asList(e.getStackTrace()));
+            }
+        }
+    }
+
+    private long nextDeadline(long fallback) {
+        long next = fallback;
+        for (Registration registration : registrations) {
+            if (registration.pending && registration.deadline - next < 0) {
+                next = registration.deadline;
+            }
+        }
+        return next;
+    }
+
+    private void handle(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        long now = System.nanoTime();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            boolean overflow = event.kind() == StandardWatchEventKinds.OVERFLOW; // Events were lost, check every file
+            for (Registration registration : registrations) {
+                if (!registration.polled && registration.directory.equals(directory)
+                        && (overflow || registration.file.getFileName().equals(event.context()))) {
+                    registration.touch(now);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void poll(long now) {
+        for (Registration registration : registrations) {
+            if (!registration.polled) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(registration.file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                continue; // Missing for now, e.g. replaced by an editor, the next poll sees the new file
+            }
+            if (!attributes.lastModifiedTime().equals(registration.lastModified) || attributes.size() != registration.size) {
+                registration.lastModified = attributes.lastModifiedTime();
+                registration.size = attributes.size();
+                registration.touch(now);
+            }
+        }
+    }
+
+    private void fire(long now) {
+        for (Registration registration : registrations) {
+            if (!registration.pending || now - registration.deadline < 0) {
+                continue;
+            }
+            registration.pending = false;
+            PottySnake pottySnake = registration.pottySnake.get();
+            if (pottySnake == null) {
+                unregister(registration); // Collected without being closed
+            } else {
+                pottySnake.fileChanged();
+            }
+        }
+    }
+
+    /**
+     * A watched file and the instance to reload when it changes.
+     * Everything but the final fields is only touched by the watcher thread.
+     */
+    static final class Registration {
+
+        private final WeakReference<PottySnake> pottySnake;
+        private final Path directory;
+        private final Path file;
+        private final long debounce;
+
+        // If true, the file is polled instead of watched natively
+        private final boolean polled;
+
+        // What the last poll saw, null if the file did not exist
+        private FileTime lastModified;
+        private long size;
+
+        // True if a reload is due once the deadline passes
+        private boolean pending;
+        private long deadline;
+
+        private Registration(PottySnake pottySnake, Path directory, Path file, long debounce, boolean polled) {
+            this.pottySnake = new WeakReference<>(pottySnake);
+            this.directory = directory;
+            this.file = file;
+            this.debounce = debounce;
+            this.polled = polled;
+        }
+
+        // Every change pushes the reload back, so a burst of writes reloads once
+        private void touch(long now) {
+            pending = true;
+            deadline = now + debounce;
+        }
+    }
+
+    // Lazily created, so the watcher thread only exists once an instance asks for it
+    private static final class Holder {
+        private static final FileWatcher INSTANCE = new FileWatcher();
+    }
+}
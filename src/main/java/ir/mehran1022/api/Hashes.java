@@ -0,0 +1,33 @@
+package ir.mehran1022.api;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes used to recognize file content that did not change.
+ *
+ * @author Mehran1022
+ */
+final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * Returns the SHA-256 digest of the content.
+     */
+    static byte[] sha256(byte[] content) {
+        return sha256().digest(content);
+    }
+
+    /**
+     * Returns a new SHA-256 digest, for content that is hashed as it streams by.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform supports SHA-256", e);
+        }
+    }
+}
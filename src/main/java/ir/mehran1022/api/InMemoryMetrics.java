@@ -0,0 +1,99 @@
+package ir.mehran1022.api;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of one or more instances in memory: counters, the latest size and a
+ * {@link LatencyHistogram} per operation. Every method is thread-safe and lock-free, and the getters
+ * can be read at any time, e.g. by a monitoring endpoint. Give every instance its own metrics to
+ * tell them apart, or share one to add them up.
+ *
+ * <pre>{@code
+ * InMemoryMetrics metrics = new InMemoryMetrics();
+ * PottySnake pottySnake = new PottySnake("config.yaml", PottySnakeOptions.builder().metrics(metrics).build());
+ * long p99 = metrics.getSaveWriteLatency().getPercentile(99);
+ * }</pre>
+ *
+ * @author Mehran1022
+ */
+@Getter
+public final class InMemoryMetrics implements PottySnakeMetrics {
+
+    // Time spent reading and parsing the file on every load
+    private final LatencyHistogram loadReadLatency = new LatencyHistogram();
+    private final LatencyHistogram loadParseLatency = new LatencyHistogram();
+
+    // Time spent dumping and writing the file on every save that wrote it
+    private final LatencyHistogram saveDumpLatency = new LatencyHistogram();
+    private final LatencyHistogram saveWriteLatency = new LatencyHistogram();
+
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private final LatencyHistogram mutationLatency = new LatencyHistogram();
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder savesSkipped = new LongAdder();
+    private final LongAdder savesCoalesced = new LongAdder();
+
+    // The size reported by the latest load or write
+    private volatile int sections;
+    private volatile long fileSize;
+
+    @Override
+    public void loaded(long readNanos, long parseNanos, long bytes) {
+        loadReadLatency.record(readNanos);
+        loadParseLatency.record(parseNanos);
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void saved(long dumpNanos, long writeNanos, long bytes) {
+        saveDumpLatency.record(dumpNanos);
+        saveWriteLatency.record(writeNanos);
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void saveSkipped() {
+        savesSkipped.increment();
+    }
+
+    @Override
+    public void saveCoalesced() {
+        savesCoalesced.increment();
+    }
+
+    @Override
+    public void lookedUp(long nanos) {
+        lookupLatency.record(nanos);
+    }
+
+    @Override
+    public void mutated(long nanos) {
+        mutationLatency.record(nanos);
+    }
+
+    @Override
+    public void sized(int sections, long bytes) {
+        this.sections = sections;
+        this.fileSize = bytes;
+    }
+
+    /**
+     * Returns a multi-line summary of every metric.
+     */
+    @Override
+    public String toString() {
+        return "load read: " + loadReadLatency
+                + "\nload parse: " + loadParseLatency
+                + "\nsave dump: " + saveDumpLatency
+                + "\nsave write: " + saveWriteLatency
+                + "\nlookup: " + lookupLatency
+                + "\nmutation: " + mutationLatency
+                + "\nbytes read=" + bytesRead.sum() + " written=" + bytesWritten.sum()
+                + "\nsaves skipped=" + savesSkipped.sum() + " coalesced=" + savesCoalesced.sum()
+                + "\nsections=" + sections + " file size=" + fileSize;
+    }
+}
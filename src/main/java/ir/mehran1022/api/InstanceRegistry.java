@@ -0,0 +1,130 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The instances handed out by {@link PottySnake#open(String, PottySnakeOptions)}, one per file in the JVM.
+ * Files are keyed by their real path, so relative paths, {@code ..} segments and symbolic links that lead to the
+ * same file share one instance. Every open takes a reference and every close drops one, the instance is only
+ * really closed once the last reference is dropped.
+ *
+ * <p>Opening and closing one file never waits for another: the map lock only guards the reference counts, and
+ * the load and the final save run under the lock of the file's entry. A file that is opened again while its
+ * last instance is still saving waits for that save, so the new instance always loads what was written.</p>
+ *
+ * @author Mehran1022
+ */
+final class InstanceRegistry {
+
+    // Guarded by itself, entries stay in the map until their instance is fully closed
+    private static final Map<Path, Entry> ENTRIES = new HashMap<>();
+
+    private InstanceRegistry() {
+    }
+
+    /**
+     * Returns the shared instance of a file, creating it if it is not open yet.
+     *
+     * @param filePath The path to the YAML file.
+     * @param options  The options the instance has to be opened with.
+     * @return The shared instance, holding one more reference.
+     * @throws IOException              If the file cannot be read or written to.
+     * @throws IllegalArgumentException If the file is already open with different options.
+     */
+    static PottySnake open(String filePath, PottySnakeOptions options) throws IOException {
+        Path key = keyFor(filePath);
+        Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.computeIfAbsent(key, Entry::new);
+            entry.references++;
+        }
+
+        synchronized (entry) {
+            try {
+                if (entry.instance == null) {
+                    entry.instance = new PottySnake(filePath, options, entry);
+                } else if (!entry.instance.getOptions().equals(options)) {
+                    throw new IllegalArgumentException(key + " is already open with other options");
+                }
+                return entry.instance;
+            } catch (IOException | RuntimeException e) {
+                forget(entry, 1);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops a reference to a shared instance, and closes it if it was the last one.
+     *
+     * @param pottySnake The instance being closed.
+     * @param entry      The entry it was opened through.
+     * @throws IOException If the final save fails.
+     */
+    static void release(PottySnake pottySnake, Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entry.instance != pottySnake) {
+                pottySnake.closeInstance(); // Closed more often than opened, it is no longer shared
+                return;
+            }
+            synchronized (ENTRIES) {
+                if (--entry.references > 0) {
+                    return;
+                }
+            }
+            entry.instance = null;
+            try {
+                pottySnake.closeInstance(); // Openers of the same file wait for this save on the entry lock
+            } finally {
+                forget(entry, 0); // Unless an open of the same file came in meanwhile, it creates the next instance
+            }
+        }
+    }
+
+    // Drops references and forgets the entry once no open holds or waits for it
+    private static void forget(Entry entry, int dropped) {
+        synchronized (ENTRIES) {
+            entry.references -= dropped;
+            if (entry.references == 0) {
+                ENTRIES.remove(entry.key, entry);
+            }
+        }
+    }
+
+    /**
+     * Returns the key a file is shared under, its real path, or for a file that does not exist yet
+     * the real path of its directory joined with its name.
+     */
+    static Path keyFor(String filePath) throws IOException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        try {
+            return path.toRealPath();
+        } catch (NoSuchFileException e) {
+            Path directory = path.getParent();
+            try {
+                return directory == null ? path : directory.toRealPath().resolve(path.getFileName());
+            } catch (NoSuchFileException missingDirectory) {
+                return path;
+            }
+        }
+    }
+
+    /**
+     * A file's shared instance and how many opens currently hold or wait for it.
+     * The instance is guarded by the entry, the reference count by the registry map.
+     */
+    static final class Entry {
+
+        private final Path key;
+        private PottySnake instance;
+        private int references;
+
+        private Entry(Path key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ir.mehran1022.api;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of mutations kept next to a YAML file as {@code <file>.journal}.
+ * Every mutation is appended in O(1) instead of rewriting the whole file, and the YAML snapshot
+ * is only rewritten when the journal is compacted.
+ *
+ * <p>The first line names the snapshot the journal applies to by its length and CRC32C,
+ * so a journal that was already folded into a newer snapshot is never replayed twice.
+ * Every record after it is framed as {@code <crc32c> <length> <flow yaml>} on its own line,
+ * a record torn by a crash fails its checksum and ends the replay.</p>
+ *
+ * @author Mehran1022
+ */
+final class Journal implements AutoCloseable {
+
+    private static final String MAGIC = "PSJ1";
+
+    // Records are single flow-style YAML sequences such as [set, a.b, 1]
+    private static final ThreadLocal<Yaml> RECORD_YAML = ThreadLocal.withInitial(() -> {
+        DumperOptions dumperOptions = new DumperOptions();
+        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.FLOW);
+        dumperOptions.setSplitLines(false);
+        dumperOptions.setWidth(Integer.MAX_VALUE);
+        dumperOptions.setLineBreak(DumperOptions.LineBreak.UNIX);
+        return new Yaml(dumperOptions);
+    });
+
+    private final Path path;
+    private final DurabilityPolicy durability;
+    private FileChannel channel;
+
+    // When the journal was last reset, used for the time based compaction threshold
+    private long resetNanos;
+
+    Journal(Path path, DurabilityPolicy durability) {
+        this.path = path;
+        this.durability = durability;
+    }
+
+    /**
+     * Returns the journal path used for the given YAML file.
+     */
+    static Path pathFor(String filePath) {
+        return Path.of(filePath + ".journal");
+    }
+
+    /**
+     * Encodes a mutation as a journal line, ready to be appended.
+     */
+    static byte[] encode(Object... record) {
+        String yaml = RECORD_YAML.get().dump(Arrays.asList(record)).stripTrailing();
+        byte[] payload = yaml.getBytes(StandardCharsets.UTF_8);
+        byte[] prefix = String.format("%08x %d ", crc(payload, 0, payload.length), payload.length)
+                .getBytes(StandardCharsets.US_ASCII);
+
+        byte[] line = Arrays.copyOf(prefix, prefix.length + payload.length + 1);
+        System.arraycopy(payload, 0, line, prefix.length, payload.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+
+    /**
+     * Opens the journal for the given snapshot and replays every record that applies to it.
+     * A journal written for another snapshot is discarded, a torn tail is cut off.
+     *
+     * @param snapshot The bytes of the YAML file the records are replayed onto.
+     * @param replay   Receives every record, in the order they were appended.
+     * @throws IOException If the journal cannot be read or written.
+     */
+    void open(byte[] snapshot, Consumer<List<Object>> replay) throws IOException {
+        close();
+        String header = header(snapshot);
+
+        if (Files.exists(path)) {
+            byte[] journal = Files.readAllBytes(path);
+            int start = header.length();
+            if (journal.length >= start && header.equals(new String(journal, 0, start, StandardCharsets.US_ASCII))) {
+                int end = replay(journal, start, replay);
+                channel = FileChannel.open(path, StandardOpenOption.WRITE);
+                if (end < journal.length) {
+                    channel.truncate(end); // Drop the torn record so new ones are appended after valid data
+                }
+                channel.position(end);
+                resetNanos = System.nanoTime();
+                return;
+            }
+        }
+        reset(snapshot);
+    }
+
+    /**
+     * Starts an empty journal for a freshly written snapshot.
+     *
+     * @param snapshot The bytes of the YAML file that now holds every mutation.
+     * @throws IOException If the journal cannot be written.
+     */
+    void reset(byte[] snapshot) throws IOException {
+        close();
+        AtomicFiles.write(path, header(snapshot).getBytes(StandardCharsets.US_ASCII), durability);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        resetNanos = System.nanoTime();
+    }
+
+    /**
+     * Appends encoded records with a single write.
+     *
+     * @param lines The records created by {@link #encode(Object...)}.
+     * @throws IOException If the journal cannot be written.
+     */
+    void append(List<byte[]> lines) throws IOException {
+        int length = 0;
+        for (byte[] line : lines) {
+            length += line.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] line : lines) {
+            buffer.put(line);
+        }
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (durability != DurabilityPolicy.NONE) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Returns the current size of the journal in bytes.
+     */
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Returns how long ago the journal was last reset, in nanoseconds.
+     */
+    long age() {
+        return System.nanoTime() - resetNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static int replay(byte[] journal, int offset, Consumer<List<Object>> replay) {
+        while (offset < journal.length) {
+            int crcEnd = indexOf(journal, offset, ' ');
+            int lengthEnd = crcEnd < 0 ? -1 : indexOf(journal, crcEnd + 1, ' ');
+            if (lengthEnd < 0) {
+                return offset;
+            }
+
+            long crc;
+            int length;
+            try {
+                crc = Long.parseLong(new String(journal, offset, crcEnd - offset, StandardCharsets.US_ASCII), 16);
+                length = Integer.parseInt(new String(journal, crcEnd + 1, lengthEnd - crcEnd - 1, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                return offset;
+            }
+
+            int payload = lengthEnd + 1;
+            if (length < 0 || (long) payload + length >= journal.length || journal[payload + length] != '\n'
+                    || crc(journal, payload, length) != crc) {
+                return offset; // Torn or corrupt, everything from here on is untrusted
+            }
+
+            String yaml = new String(journal, payload, length, StandardCharsets.UTF_8);
+            replay.accept(RECORD_YAML.get().load(yaml));
+            offset = payload + length + 1;
+        }
+        return offset;
+    }
+
+    private static int indexOf(byte[] bytes, int from, char c) {
+        for (int i = from; i < bytes.length && i < from + 16; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String header(byte[] snapshot) {
+        return String.format("%s %08x %d\n", MAGIC, crc(snapshot, 0, snapshot.length), snapshot.length);
+    }
+
+    private static long crc(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+}
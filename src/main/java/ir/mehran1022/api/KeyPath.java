@@ -0,0 +1,114 @@
+package ir.mehran1022.api;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dot-notation key compiled into its segments once, so lookups can walk the YAML data
+ * without splitting the key again on every call.
+ * Compile keys that are used repeatedly with {@link #of(String)} and keep the instance around.
+ *
+ * <pre>{@code
+ * private static final KeyPath POOL_SIZE = KeyPath.of("database.pool.size");
+ *
+ * Object size = pottySnake.getEntry(POOL_SIZE);
+ * }</pre>
+ *
+ * @author Mehran1022
+ */
+public final class KeyPath {
+
+    // Upper bound for the cache behind the String based PottySnake methods, it is cleared once full
+    private static final int CACHE_LIMIT = 1024;
+    private static final Map<String, KeyPath> CACHE = new ConcurrentHashMap<>();
+
+    // The key this path was compiled from
+    private final String key;
+
+    // The key split on dots, with every segment's hash code already computed
+    private final String[] segments;
+
+    private KeyPath(String key) {
+        String[] split = key.split("\\.");
+        if (split.length == 0) {
+            throw new IllegalArgumentException("Key has no segments: '" + key + "'");
+        }
+        for (String segment : split) {
+            segment.hashCode(); // Warms the cached hash so map lookups do not compute it
+        }
+        this.key = key;
+        this.segments = split;
+    }
+
+    /**
+     * Compiles a dot-notation key into a path.
+     *
+     * @param key The key, which can be a simple or nested key.
+     * @return The compiled path.
+     * @throws IllegalArgumentException If the key consists of dots only.
+     */
+    public static KeyPath of(String key) {
+        return new KeyPath(key);
+    }
+
+    /**
+     * Returns the compiled path for the key, from the shared cache if it was compiled before.
+     */
+    static KeyPath cached(String key) {
+        KeyPath path = CACHE.get(key);
+        if (path == null) {
+            path = new KeyPath(key);
+            if (CACHE.size() >= CACHE_LIMIT) {
+                CACHE.clear(); // Lets a new working set in instead of pinning the first keys forever
+            }
+            CACHE.putIfAbsent(key, path);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of segments in this path.
+     *
+     * @return The segment count, at least one.
+     */
+    public int size() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the segment at the given position.
+     *
+     * @param index The position of the segment, starting at zero.
+     * @return The segment.
+     */
+    public String segment(int index) {
+        return segments[index];
+    }
+
+    /**
+     * Returns the last segment, which names the entry itself.
+     *
+     * @return The last segment.
+     */
+    public String last() {
+        return segments[segments.length - 1];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || other instanceof KeyPath && key.equals(((KeyPath) other).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /**
+     * Returns the dot-notation key this path was compiled from.
+     */
+    @Override
+    public String toString() {
+        return key;
+    }
+}
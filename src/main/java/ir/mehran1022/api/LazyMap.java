@@ -0,0 +1,365 @@
+package ir.mehran1022.api;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.StringReader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * The root map of a file loaded with {@link PottySnakeOptions#isLazySections()}.
+ * Every top-level section is kept as its YAML text until its value is first read, so only the sections
+ * that are used are ever composed. Keys, size and containsKey never parse, reading a value parses its
+ * section, and iterating the values or entries parses every section that is still unparsed.
+ *
+ * @author Mehran1022
+ */
+final class LazyMap extends LinkedHashMap<String, Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private LazyMap() {
+    }
+
+    /**
+     * Splits a document into its top-level sections without composing any of them.
+     * Only plain block mappings with string keys at column zero and no aliases are split,
+     * anything else has to be loaded as a whole.
+     *
+     * @param content The YAML document.
+     * @return The lazily parsed root map, or null if the document has to be loaded eagerly.
+     */
+    static LazyMap scan(String content) {
+        Yaml parser = YamlPool.borrow();
+        try {
+            return scan(content, parser);
+        } finally {
+            YamlPool.release(parser);
+        }
+    }
+
+    private static LazyMap scan(String content, Yaml parser) {
+        Resolver resolver = new Resolver();
+        List<String> keys = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        List<Integer> starts = new ArrayList<>();
+
+        int depth = 0;
+        boolean expectKey = false;
+        boolean rootSeen = false;
+        int codePoints = 0; // Marks count code points, translated into char offsets as the scan moves on
+        int offset = 0;
+
+        for (Event event : parser.parse(new StringReader(content))) {
+            switch (event.getEventId()) {
+                case Alias:
+                    return null; // An anchor may be shared between sections
+                case DocumentStart:
+                    if (((DocumentStartEvent) event).getExplicit() || rootSeen) {
+                        return null;
+                    }
+                    break;
+                case DocumentEnd:
+                    if (((DocumentEndEvent) event).getExplicit()) {
+                        return null;
+                    }
+                    break;
+                case MappingStart:
+                case SequenceStart:
+                    if (depth == 0) {
+                        CollectionStartEvent root = (CollectionStartEvent) event;
+                        if (!event.is(Event.ID.MappingStart) || root.isFlow() || root.getTag() != null
+                                || root.getAnchor() != null || event.getStartMark().getColumn() != 0) {
+                            return null;
+                        }
+                        rootSeen = true;
+                        expectKey = true;
+                    } else if (depth == 1 && expectKey) {
+                        return null; // A complex key
+                    }
+                    depth++;
+                    break;
+                case MappingEnd:
+                case SequenceEnd:
+                    depth--;
+                    if (depth == 1) {
+                        expectKey = true; // The section's value is complete
+                    }
+                    break;
+                case Scalar:
+                    if (depth == 0) {
+                        return null; // The document is a single scalar
+                    }
+                    if (depth > 1) {
+                        break;
+                    }
+                    if (!expectKey) {
+                        expectKey = true;
+                        break;
+                    }
+                    ScalarEvent key = (ScalarEvent) event;
+                    if (!isStringKey(key, resolver) || event.getStartMark().getColumn() != 0 || !seen.add(key.getValue())) {
+                        return null;
+                    }
+                    int index = event.getStartMark().getIndex();
+                    while (codePoints < index) {
+                        offset += Character.charCount(content.codePointAt(offset));
+                        codePoints++;
+                    }
+                    keys.add(key.getValue());
+                    starts.add(keys.size() == 1 ? 0 : offset); // The first section keeps the leading comments
+                    expectKey = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        LazyMap map = new LazyMap();
+        for (int i = 0; i < keys.size(); i++) {
+            int end = i + 1 < keys.size() ? starts.get(i + 1) : content.length();
+            map.putRaw(keys.get(i), new Section(keys.get(i), content.substring(starts.get(i), end)));
+        }
+        return map;
+    }
+
+    /**
+     * Checks if a key scalar loads as a String, i.e. it is quoted or a plain scalar that resolves to str.
+     */
+    static boolean isStringKey(ScalarEvent key, Resolver resolver) {
+        if (key.getTag() != null) {
+            return false;
+        }
+        if (key.getScalarStyle() != DumperOptions.ScalarStyle.PLAIN) {
+            return true; // Quoted keys are always strings
+        }
+        return resolver.resolve(NodeId.scalar, key.getValue(), true).equals(Tag.STR);
+    }
+
+    /**
+     * Returns the YAML text of a section that was not parsed yet.
+     *
+     * @param key The top-level key.
+     * @return The text as it appeared in the file, or null if the section is parsed or does not exist.
+     */
+    String verbatim(Object key) {
+        Object value = super.get(key);
+        return value instanceof Section ? ((Section) value).text : null;
+    }
+
+    /**
+     * Copies this map like {@link LinkedHashMap#LinkedHashMap(Map)} followed by copying every value,
+     * without parsing the sections that are still unparsed.
+     *
+     * @param copyValue Copies a parsed value.
+     * @return The copy.
+     */
+    LazyMap copy(UnaryOperator<Object> copyValue) {
+        LazyMap copy = new LazyMap();
+        for (Map.Entry<String, Object> entry : super.entrySet()) {
+            Object value = entry.getValue();
+            String text = value instanceof Section ? ((Section) value).text : null;
+            if (text != null) {
+                copy.putRaw(entry.getKey(), new Section(entry.getKey(), text));
+            } else {
+                copy.putRaw(entry.getKey(), copyValue.apply(resolve(value)));
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return resolve(super.get(key));
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        return containsKey(key) ? get(key) : defaultValue;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return resolve(super.put(key, value));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return resolve(super.remove(key));
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        resolveAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        resolveAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        resolveAll();
+        return super.values();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        resolveAll();
+        super.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        resolveAll();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        parse(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        parse(key);
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        parse(key);
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        parse(key);
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        parse(key);
+        return super.merge(key, value, remappingFunction);
+    }
+
+    /**
+     * Returns the value of a key as it is stored, a section that was not parsed yet stays unparsed.
+     */
+    Object raw(Object key) {
+        return super.get(key);
+    }
+
+    /**
+     * Stores a value as returned by {@link #raw(Object)}, without parsing the value it replaces.
+     */
+    void putRaw(String key, Object value) {
+        super.put(key, value);
+    }
+
+    /**
+     * Stores a value as returned by {@link #raw(Object)} at a position of the key order, without parsing anything.
+     */
+    void insertRaw(int index, String key, Object value) {
+        List<Map.Entry<String, Object>> tail = new ArrayList<>();
+        Iterator<Map.Entry<String, Object>> entries = super.entrySet().iterator();
+        for (int i = 0; entries.hasNext(); i++) {
+            Map.Entry<String, Object> entry = entries.next();
+            if (i >= index) {
+                tail.add(new AbstractMap.SimpleEntry<>(entry));
+                entries.remove();
+            }
+        }
+        super.put(key, value);
+        tail.forEach(entry -> super.put(entry.getKey(), entry.getValue()));
+    }
+
+    // Swaps a section for its value, so the map methods that read values internally see the real one
+    private void parse(String key) {
+        Object value = super.get(key);
+        if (value instanceof Section) {
+            super.put(key, ((Section) value).value());
+        }
+    }
+
+    private void resolveAll() {
+        for (Map.Entry<String, Object> entry : super.entrySet()) {
+            if (entry.getValue() instanceof Section) {
+                entry.setValue(((Section) entry.getValue()).value());
+            }
+        }
+    }
+
+    // Serialized as a plain map with every section parsed, a Section is not serializable
+    private Object writeReplace() {
+        resolveAll();
+        return new LinkedHashMap<>(this);
+    }
+
+    private static Object resolve(Object value) {
+        return value instanceof Section ? ((Section) value).value() : value;
+    }
+
+    /**
+     * A top-level section that is parsed on first access.
+     */
+    private static final class Section {
+
+        private final String key;
+
+        // The section's YAML text, released once it is parsed
+        private volatile String text;
+        private Object value;
+
+        private Section(String key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+
+        private Object value() {
+            if (text != null) {
+                synchronized (this) { // Readers may reach the same section concurrently, it is parsed once
+                    if (text != null) {
+                        Yaml parser = YamlPool.borrow();
+                        try {
+                            Map<String, Object> section = parser.load(text);
+                            value = section.get(key);
+                        } finally {
+                            YamlPool.release(parser);
+                        }
+                        text = null; // Published by the volatile write, readers that see null see the value
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
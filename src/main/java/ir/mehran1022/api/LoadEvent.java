@@ -0,0 +1,40 @@
+package ir.mehran1022.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for every load and reload of a file, disabled unless a recording enables
+ * {@code ir.mehran1022.PottySnakeLoad}. The duration covers reading and parsing the file.
+ *
+ * @author Mehran1022
+ */
+@Name("ir.mehran1022.PottySnakeLoad")
+@Label("PottySnake Load")
+@Category("PottySnake")
+@Description("A YAML file was read and parsed into memory")
+@Enabled(false)
+@StackTrace(false)
+final class LoadEvent extends Event {
+
+    @Label("File")
+    String filePath;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Nodes")
+    @Description("Entries and list elements in the loaded data, a lazy section that was not parsed counts as one")
+    long nodes;
+
+    @Label("Reload")
+    @Description("True if the file was reloaded because it changed on disk")
+    boolean reload;
+}
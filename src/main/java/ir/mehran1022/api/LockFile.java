@@ -0,0 +1,81 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock on {@code <file>.lock} that every process saving the file with
+ * {@link PottySnakeOptions#isFileLock()} takes around the check and the write of a save.
+ * The dump is done before the lock is taken, so it is only held for the rename and, with a
+ * {@link ConflictPolicy}, the stat of the file.
+ *
+ * <p>The lock file is named after the file's real path, so every path leading to the file locks the same one.
+ * It is never deleted, deleting it would let two processes lock two different files of the same name.</p>
+ *
+ * @author Mehran1022
+ */
+final class LockFile {
+
+    // Releases nothing, returned when the file is not locked
+    private static final Held NONE = () -> {
+    };
+
+    // FileChannel locks are held by the whole JVM and overlapping ones throw, so threads queue here first
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private LockFile() {
+    }
+
+    /**
+     * Returns the no-op lock, for instances that do not lock their file.
+     */
+    static Held none() {
+        return NONE;
+    }
+
+    /**
+     * Waits for the lock of a YAML file, first against other threads of this JVM, then against other processes.
+     *
+     * @param filePath The path to the YAML file.
+     * @return The held lock, to be closed once the save is complete.
+     * @throws IOException If the lock file cannot be created or locked.
+     */
+    static Held acquire(String filePath) throws IOException {
+        Path path = Path.of(InstanceRegistry.keyFor(filePath) + ".lock");
+        ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(path, key -> new ReentrantLock());
+        localLock.lock();
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return () -> {
+                try {
+                    channel.close(); // Releases the file lock
+                } finally {
+                    localLock.unlock();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            localLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * A lock held by a save, released by {@link #close()}.
+     */
+    @FunctionalInterface
+    interface Held extends AutoCloseable {
+        @Override
+        void close() throws IOException;
+    }
+}
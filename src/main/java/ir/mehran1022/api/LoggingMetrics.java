@@ -0,0 +1,124 @@
+package ir.mehran1022.api;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects metrics like {@link InMemoryMetrics} and logs a summary of them periodically,
+ * for applications that have no monitoring system to export them to.
+ * Close it once the instances it measures are closed to stop the logging.
+ *
+ * <pre>{@code
+ * LoggingMetrics metrics = new LoggingMetrics("config.yaml", Duration.ofMinutes(1), System.out::println);
+ * }</pre>
+ *
+ * @author Mehran1022
+ */
+public final class LoggingMetrics implements PottySnakeMetrics, AutoCloseable {
+
+    // The metrics being logged, readable directly as well
+    @Getter
+    private final InMemoryMetrics metrics = new InMemoryMetrics();
+
+    private final String name;
+    private final Consumer<String> log;
+    private final ScheduledFuture<?> logging;
+
+    /**
+     * Starts logging to standard output.
+     *
+     * @param name     Prefixes every summary, e.g. the file the metrics belong to.
+     * @param interval How often a summary is logged.
+     */
+    public LoggingMetrics(String name, Duration interval) {
+        this(name, interval, System.out::println);
+    }
+
+    /**
+     * Starts logging to the given sink, e.g. a logger method.
+     *
+     * @param name     Prefixes every summary, e.g. the file the metrics belong to.
+     * @param interval How often a summary is logged.
+     * @param log      Receives every summary.
+     */
+    public LoggingMetrics(String name, Duration interval, Consumer<String> log) {
+        this.name = name;
+        this.log = Objects.requireNonNull(log, "log");
+        long period = interval.toNanos();
+        if (period <= 0) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        this.logging = Logger.SCHEDULER.scheduleAtFixedRate(this::log, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Logs a summary right away.
+     */
+    public void log() {
+        try {
+            log.accept("PottySnake metrics of " + name + "\n" + metrics);
+        } catch (RuntimeException e) {
+            System.err.println("problem with metrics logging \n" + Arrays.asList(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Stops the periodic logging. The metrics are still collected.
+     */
+    @Override
+    public void close() {
+        logging.cancel(false);
+    }
+
+    @Override
+    public void loaded(long readNanos, long parseNanos, long bytes) {
+        metrics.loaded(readNanos, parseNanos, bytes);
+    }
+
+    @Override
+    public void saved(long dumpNanos, long writeNanos, long bytes) {
+        metrics.saved(dumpNanos, writeNanos, bytes);
+    }
+
+    @Override
+    public void saveSkipped() {
+        metrics.saveSkipped();
+    }
+
+    @Override
+    public void saveCoalesced() {
+        metrics.saveCoalesced();
+    }
+
+    @Override
+    public void lookedUp(long nanos) {
+        metrics.lookedUp(nanos);
+    }
+
+    @Override
+    public void mutated(long nanos) {
+        metrics.mutated(nanos);
+    }
+
+    @Override
+    public void sized(int sections, long bytes) {
+        metrics.sized(sections, bytes);
+    }
+
+    // Lazily started daemon thread shared by every logging metrics
+    private static final class Logger {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PottySnake-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
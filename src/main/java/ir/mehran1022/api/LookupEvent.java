@@ -0,0 +1,31 @@
+package ir.mehran1022.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event for a slow {@code getEntry} or typed getter, disabled unless a recording enables
+ * {@code ir.mehran1022.PottySnakeLookup}. Only lookups slower than the threshold, 1 ms unless the recording
+ * sets another, are recorded, e.g. ones that waited for a writer or parsed a lazy section.
+ *
+ * @author Mehran1022
+ */
+@Name("ir.mehran1022.PottySnakeLookup")
+@Label("PottySnake Slow Lookup")
+@Category("PottySnake")
+@Description("Looking up an entry of in-memory YAML data took longer than the threshold")
+@Enabled(false)
+@Threshold("1 ms")
+final class LookupEvent extends Event {
+
+    @Label("File")
+    String filePath;
+
+    @Label("Key")
+    String key;
+}
@@ -0,0 +1,32 @@
+package ir.mehran1022.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for every {@code setEntry}, {@code addEntry}, {@code removeEntry}, {@code createSection},
+ * {@code createList} and {@code renameSection}, disabled unless a recording enables
+ * {@code ir.mehran1022.PottySnakeMutation}. The duration includes the save if it ran in the foreground.
+ *
+ * @author Mehran1022
+ */
+@Name("ir.mehran1022.PottySnakeMutation")
+@Label("PottySnake Mutation")
+@Category("PottySnake")
+@Description("An entry or section of in-memory YAML data was set, added, removed, created or renamed")
+@Enabled(false)
+final class MutationEvent extends Event {
+
+    @Label("File")
+    String filePath;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Key")
+    String key;
+}
@@ -1,13 +1,30 @@
 package ir.mehran1022.api;
 
 import lombok.Getter;
-import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.reader.UnicodeReader;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A robust library for managing YAML files utilizing the SnakeYAML library.
@@ -16,17 +33,116 @@ import java.util.*;
  * @version 1.2
  */
 @SuppressWarnings({"unchecked", "unused"})
-public final class PottySnake {
+public final class PottySnake implements AutoCloseable {
 
-    // The SnakeYAML parser instance for YAML operations
-    @Getter
-    private final Yaml snakeYaml;
+    // The SnakeYAML instance handed out by getSnakeYaml, created on first use
+    private Yaml snakeYaml;
 
     // The path to the YAML file managed by this instance
+    @Getter
     private final String filePath;
 
+    // If true, load and save run on a background thread and return right away
+    @Getter
+    private final boolean threadSafe;
+
+    // The options this instance was created with
+    @Getter
+    private final PottySnakeOptions options;
+
     // The in-memory representation of the YAML data as a nested map
-    private Map<String, Object> data;
+    private volatile Map<String, Object> data;
+
+    // If true, the published data is never modified, writers copy the maps on their path and swap the root
+    private final boolean copyOnWrite;
+
+    // The unpublished root of the running copy-on-write mutation or batch, or null
+    private Map<String, Object> working;
+
+    // Marks an entry missing on one side of a merge, unlike null which is a value
+    private static final Object ABSENT = new Object();
+
+    // The maps and lists copied by the running copy-on-write mutation, by the read-only view published for them
+    private final Map<Object, Object> ownedCopies = new IdentityHashMap<>();
+
+    // Keeps readers out of the sections being changed in place, null unless thread-safe without copy-on-write
+    private final SectionLocks sectionLocks;
+
+    // Receives the metrics, only measured if enabled so the clock is never read for nothing
+    private final PottySnakeMetrics metrics;
+    private final boolean measured;
+
+    // Serializes file writes so an older dump never overwrites a newer one
+    private final Object writeLock = new Object();
+
+    // Incremented on every dump, used to drop writes that were overtaken by a newer dump
+    private long dumpVersion;
+    private long writtenVersion;
+
+    // SHA-256 of the content last read from or written to the file, null if it does not exist yet
+    private byte[] diskHash;
+
+    // The modification time and size the file had then, checked before it is hashed again or a save is skipped
+    private FileTime diskModified;
+    private long diskSize;
+
+    // The content itself, the base a conflicting save merges against, null unless the conflict policy merges
+    private byte[] diskContent;
+
+    // The mutations made since the last save, replayed onto the file if someone else changed it
+    private final List<List<Object>> unsavedMutations = new ArrayList<>();
+
+    // The dumped YAML of every top-level section, reused by the next save unless the section was touched
+    private final Map<Object, Fragment> fragments = new HashMap<>();
+    private final Set<Object> touchedSections = new HashSet<>();
+
+    // The listeners registered through subscribe
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Top-level sections changed since the subscribers were last notified, or every section after a load
+    private final Set<Object> changedSections = new HashSet<>();
+    private boolean reloaded;
+
+    // The registry entry this instance is shared through, null unless it was created by open
+    private final InstanceRegistry.Entry registryEntry;
+
+    // The registration with the shared file watcher, null if the file is not watched
+    private FileWatcher.Registration watchRegistration;
+
+    // True when the in-memory data has changes that are not written to the file yet
+    private boolean dirty;
+
+    // The pending write-behind flush, or null if none is scheduled
+    private ScheduledFuture<?> scheduledFlush;
+
+    // True while a thread-safe save is queued but has not dumped yet, later saves ride along with it
+    private boolean saveQueued;
+
+    // Once closed, mutations are written through instead of being scheduled
+    private boolean closed;
+
+    // Runs the thread-safe loads and saves, created on first use unless one was given in the options
+    private ExecutorService executor;
+
+    // Completes once the last task handed to the executor ran, each task waits for the one before it. Guarded by itself
+    private final Object taskLock = new Object();
+    private CompletableFuture<Void> lastTask = CompletableFuture.completedFuture(null);
+
+    // The mutation journal, or null if mutations rewrite the file
+    private final Journal journal;
+
+    // Journal records of the running mutation or batch, appended once it completes
+    private final List<byte[]> pendingRecords = new ArrayList<>();
+
+    // True while the journal is replayed, so the replayed mutations are neither recorded nor saved
+    private boolean replaying;
+
+    // Depth of the running batches, mutations only save once it drops back to zero
+    private int batchDepth;
+    private boolean batchChanged;
+
+    // Undoes the in-place changes of the running batches, latest last, null outside a batch or in copy-on-write mode
+    private List<Runnable> undoLog;
 
     /**
      * Constructs a new PottySnake instance associated with the given file path.
@@ -36,205 +152,2239 @@ public final class PottySnake {
      * @throws IOException If the file cannot be read or written to.
      */
     public PottySnake(String filePath) throws IOException {
-        this.snakeYaml = new Yaml(getDumperOptions());
+        this(filePath, PottySnakeOptions.defaults());
+    }
+
+    /**
+     * Constructs a new PottySnake instance associated with the given file path.
+     * It initializes the parser and loads the existing YAML content into memory.
+     *
+     * @param filePath   The path to the YAML file to manage.
+     * @param threadSafe If true, the thread-safe methods will execute.
+     * @throws IOException If the file cannot be read or written to.
+     */
+    public PottySnake(String filePath, boolean threadSafe) throws IOException {
+        this(filePath, PottySnakeOptions.builder().threadSafe(threadSafe).build());
+    }
+
+    /**
+     * Constructs a new PottySnake instance associated with the given file path and options.
+     * It initializes the parser and loads the existing YAML content into memory.
+     *
+     * @param filePath The path to the YAML file to manage.
+     * @param options  The options to tune this instance with.
+     * @throws IOException If the file cannot be read or written to.
+     * @see #open(String, PottySnakeOptions)
+     */
+    public PottySnake(String filePath, PottySnakeOptions options) throws IOException {
+        this(filePath, options, null);
+    }
+
+    PottySnake(String filePath, PottySnakeOptions options, InstanceRegistry.Entry registryEntry) throws IOException {
         this.filePath = filePath;
+        this.registryEntry = registryEntry;
+        this.options = Objects.requireNonNull(options, "options");
+        this.threadSafe = options.isThreadSafe();
+        this.copyOnWrite = options.isCopyOnWrite();
+        this.sectionLocks = threadSafe && !copyOnWrite ? new SectionLocks() : null;
+        this.metrics = Objects.requireNonNullElse(options.getMetrics(), PottySnakeMetrics.NONE);
+        this.measured = metrics != PottySnakeMetrics.NONE;
+        if (options.isJournal() && options.isWriteBehind()) {
+            throw new IllegalArgumentException("The journal and write-behind cannot be combined");
+        }
+        if (options.isLazySections() && options.isCopyOnWrite()) {
+            throw new IllegalArgumentException("Lazy sections and copy-on-write cannot be combined");
+        }
+        if (options.isJournal() && options.getConflictPolicy() != ConflictPolicy.OVERWRITE) {
+            throw new IllegalArgumentException("The journal and a conflict policy cannot be combined");
+        }
+        this.journal = options.isJournal() ? new Journal(Journal.pathFor(filePath), options.getDurability()) : null;
         data = new LinkedHashMap<>();
-        load();
-        save();
+        normalLoad(); // Always in the foreground, saving before the data arrived would empty the file
+        if (options.isNormalizeOnOpen()) {
+            save();
+        }
+        if (options.isWatch()) {
+            watchRegistration = FileWatcher.shared().register(this, options.getWatchDebounce());
+        }
     }
 
     /**
-     * Loads the YAML content from the file into the data map.
-     * If the file is empty or the content is invalid, an empty map is initialized.
+     * Returns the instance shared by every caller in the JVM that opens the same file, loading it on first use.
+     * Paths that lead to the same file, e.g. through a symbolic link, share one instance, so the file is parsed
+     * once and no caller overwrites the changes of another. Every call must be paired with a {@link #close()},
+     * which only closes the instance once every caller has closed it.
      *
-     * @throws IOException If the file cannot be read.
+     * @param filePath The path to the YAML file to manage.
+     * @return The shared instance, opened with the default options.
+     * @throws IOException If the file cannot be read or written to.
      */
-    public void load() throws IOException {
-        String content = Files.readString(Path.of(filePath));
-        Map<String, Object> loadedData = getSnakeYaml().load(content);
-        data = Objects.requireNonNullElseGet(loadedData, LinkedHashMap::new);
+    public static PottySnake open(String filePath) throws IOException {
+        return open(filePath, PottySnakeOptions.defaults());
     }
 
     /**
-     * Saves the in-memory data map to the YAML file.
-     * The data is converted to a YAML-formatted string and written to the file.
+     * Returns the instance shared by every caller in the JVM that opens the same file, loading it on first use.
+     * Paths that lead to the same file, e.g. through a symbolic link, share one instance, so the file is parsed
+     * once and no caller overwrites the changes of another. Every call must be paired with a {@link #close()},
+     * which only closes the instance once every caller has closed it.
      *
-     * @throws IOException If the file cannot be written to.
+     * @param filePath The path to the YAML file to manage.
+     * @param options  The options to tune the instance with, equal to those of every other caller.
+     * @return The shared instance.
+     * @throws IOException              If the file cannot be read or written to.
+     * @throws IllegalArgumentException If the file is already open with different options.
      */
-    public void save() throws IOException {
-        String content = getSnakeYaml().dump(data);
-        Files.writeString(Path.of(filePath), content);
+    public static PottySnake open(String filePath, PottySnakeOptions options) throws IOException {
+        return InstanceRegistry.open(filePath, Objects.requireNonNull(options, "options"));
+    }
+
+    private void normalLoad() throws IOException {
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        long start = measured ? System.nanoTime() : 0;
+        if (streamsLoads()) {
+            ParsedContent content = readParsed();
+            install(content.data());
+            loaded(start, start, content.size(), event, false); // Read while parsing, it all counts as parsing
+            return;
+        }
+        FileContent content = read();
+        long read = measured ? System.nanoTime() : 0;
+        install(content.bytes(), content.hash());
+        loaded(start, read, content.bytes().length, event, false);
     }
 
     /**
-     * Retrieves a value from the YAML data using a key.
-     * The key can represent a nested path with dot notation.
+     * Reports a completed load to the metrics and the JFR event.
+     */
+    private void loaded(long start, long read, long bytes, LoadEvent event, boolean reload) {
+        if (measured) {
+            metrics.loaded(read - start, System.nanoTime() - read, bytes);
+            metrics.sized(data.size(), bytes);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.filePath = filePath;
+            event.bytes = bytes;
+            synchronized (this) {
+                event.nodes = countNodes(data); // No mutator runs while the monitor is held
+            }
+            event.reload = reload;
+            event.commit();
+        }
+    }
+
+    /**
+     * Replaces the in-memory data with the parsed content and replays the journal on top of it.
      *
-     * @param key The key to retrieve the value for.
-     * @return The value, or null if the key does not exist.
+     * @param hash The SHA-256 of the content, null if the file does not exist.
      */
-    public Object getEntry(String key) {
-        String[] keys = key.split("\\.");
-        Map<String, Object> currentMap = data;
+    private synchronized void install(byte[] bytes, byte[] hash) throws IOException {
+        replace(parse(bytes, hash), bytes);
+        notifySubscribers();
+    }
 
-        for (int i = 0; i < keys.length - 1; i++) {
-            Object value = currentMap.get(keys[i]);
+    /**
+     * Replaces the in-memory data with data parsed while the file was read, see {@link #readParsed()}.
+     */
+    private synchronized void install(Map<String, Object> loadedData) throws IOException {
+        replace(loadedData, null);
+        notifySubscribers();
+    }
 
-            if (value instanceof Map) {
-                currentMap = (Map<String, Object>) value;
-            } else {
-                return null; // The key does not exist
+    /**
+     * Parses file content, from its snapshot if there is a current one.
+     *
+     * @param hash The SHA-256 of the content, null if the file does not exist.
+     */
+    private Map<String, Object> parse(byte[] bytes, byte[] hash) {
+        boolean snapshot = options.isSnapshot() && hash != null;
+        Map<String, Object> loadedData = snapshot ? readSnapshot(bytes.length, hash) : null;
+        if (loadedData == null) {
+            String content = new String(bytes, StandardCharsets.UTF_8);
+            loadedData = options.isLazySections() ? LazyMap.scan(content) : null;
+            if (loadedData == null) {
+                Yaml yaml = YamlPool.borrow();
+                try {
+                    loadedData = yaml.load(content);
+                } finally {
+                    YamlPool.release(yaml);
+                }
+                loadedData = Objects.requireNonNullElseGet(loadedData, LinkedHashMap::new);
+                if (snapshot) {
+                    writeSnapshot(loadedData, bytes.length, hash);
+                }
+            }
+        }
+        return loadedData;
+    }
+
+    /**
+     * Replaces the in-memory data, discarding unsaved changes, and replays the journal on top of it.
+     * The subscribers are notified by the caller.
+     */
+    private void replace(Map<String, Object> loadedData, byte[] bytes) throws IOException {
+        working = null;
+        ownedCopies.clear();
+        fragments.clear();
+        touchedSections.clear();
+        data = copyOnWrite ? (Map<String, Object>) immutableCopy(loadedData) : loadedData;
+        dirty = false;
+        pendingRecords.clear();
+        unsavedMutations.clear();
+        if (journal != null) {
+            replaying = true;
+            try {
+                journal.open(bytes, this::replay);
+            } finally {
+                replaying = false;
             }
         }
+        reloaded = true;
+    }
 
-        return currentMap.get(keys[keys.length - 1]);
+    /**
+     * Called by the {@link FileWatcher} once the file changed and settled, reloads it on the executor.
+     */
+    void fileChanged() {
+        runAsync(this::reloadIfModified).whenComplete(PottySnake::logFailure);
     }
 
     /**
-     * Adds an entry to the specified section in the YAML data.
-     * If the section is a map, the entry is added to it.
-     * If the section is a list, the value is appended to the list.
-     * If the section does not exist, it is created as a map and the entry is added.
-     *
-     * @param section The section under which the entry will be added.
-     * @param key     The key for the entry within the section, or null if adding to a list.
-     * @param value   The value to add for the entry.
+     * Reloads the file if it differs from what this instance last read or wrote, so the instance's own saves
+     * are ignored. Holds the monitor throughout, so no mutation lands between the read and the reload.
+     */
+    private synchronized void reloadIfModified() throws IOException {
+        if (closed) {
+            return;
+        }
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        long start = measured ? System.nanoTime() : 0;
+        byte[] bytes;
+        synchronized (writeLock) {
+            BasicFileAttributes attributes = attributes();
+            try {
+                bytes = Files.readAllBytes(Path.of(filePath));
+            } catch (NoSuchFileException e) {
+                return; // Deleted, keep the data until the file is back
+            }
+            byte[] hash = Hashes.sha256(bytes);
+            if (Arrays.equals(hash, diskHash)) {
+                return;
+            }
+            remember(bytes, hash, attributes);
+            writtenVersion = dumpVersion + 1; // Dumps still queued predate the change, they must not overwrite it
+        }
+        long read = measured ? System.nanoTime() : 0;
+        install(bytes, diskHash);
+        loaded(start, read, bytes.length, event, true);
+    }
+
+    private Map<String, Object> readSnapshot(long size, byte[] hash) {
+        try {
+            return Snapshot.read(Snapshot.pathFor(filePath), size, hash);
+        } catch (IOException e) {
+            return null; // Unreadable, the YAML is parsed instead and the snapshot rewritten
+        }
+    }
+
+    /**
+     * Encodes the freshly parsed data right away, before any mutation, and writes it on the executor.
      */
-    public void addEntry(String section, String key, Object value) throws IOException {
-        Object sectionObject = data.get(section);
-
-        if (sectionObject instanceof Map) {
-            // Section exists and is a map, add the key-value pair to it
-            ((Map<String, Object>) sectionObject).put(key, value);
-        } else if (sectionObject instanceof List) {
-            // Section exists and is a list, append the value to the list
-            ((List<Object>) sectionObject).add(value);
-        } else if (key == null) {
-            // If key is null, assume adding to a list and create a new list with the value
-            List<Object> newList = new ArrayList<>();
-            newList.add(value);
-            data.put(section, newList);
+    private void writeSnapshot(Map<String, Object> parsed, long size, byte[] hash) {
+        byte[] snapshot = Snapshot.encode(parsed, size, hash);
+        if (snapshot != null) {
+            runAsync(() -> AtomicFiles.write(Snapshot.pathFor(filePath), snapshot, DurabilityPolicy.NONE))
+                    .whenComplete(PottySnake::logFailure);
+        }
+    }
+
+    private void replay(List<Object> record) {
+        try {
+            String key = (String) record.get(1);
+            switch ((String) record.get(0)) {
+                case "set" -> setEntry(KeyPath.cached(key), record.get(2));
+                case "remove" -> removeEntry(KeyPath.cached(key));
+                case "add" -> addEntry(key, (String) record.get(2), record.get(3));
+                case "section" -> createSection(key);
+                case "list" -> createList(key);
+                default -> throw new IllegalStateException("Unknown journal record " + record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not reached, replayed mutations do no IO
+        }
+    }
+
+    private void synchronizedLoad() {
+        loadAsync().whenComplete(PottySnake::logFailure);
+    }
+
+    private void normalSave() throws IOException {
+        if (journal != null) {
+            compact();
+        } else if (options.getConflictPolicy() == ConflictPolicy.RELOAD_AND_REAPPLY
+                || options.getConflictPolicy() == ConflictPolicy.MERGE) {
+            resolvingSave();
         } else {
-            // Section does not exist or is null, create a new map and add the key-value pair
-            Map<String, Object> newMap = new LinkedHashMap<>();
-            newMap.put(key, value);
-            data.put(section, newMap);
+            write(dump());
         }
-        save();
     }
 
     /**
-     * Adds or updates an entry in the YAML data.
-     *
-     * @param key      The key for the entry, which can be a simple or nested key.
-     * @param value    The value to set for the entry.
+     * Dumps and writes under the monitor, so a conflict can replace the data and no mutation
+     * lands between the dump and clearing the mutations it saved.
      */
-    public void setEntry(String key, Object value) throws IOException {
-        String[] keys = key.split("\\.");
-        Map<String, Object> currentMap = data;
+    private synchronized void resolvingSave() throws IOException {
+        write(dump());
+        unsavedMutations.clear();
+    }
 
-        for (int i = 0; i < keys.length - 1; i++) {
-            Object mapValue = currentMap.get(keys[i]);
+    /**
+     * Folds the journal into the YAML file. Runs under the monitor so no mutation is
+     * appended between the dump and the reset of the journal.
+     */
+    private synchronized void compact() throws IOException {
+        Dump dump = dump();
+        write(dump);
+        journal.reset(dump.content());
+        if (closed) {
+            journal.close();
+        }
+    }
 
-            if (!(mapValue instanceof Map)) {
-                // Create a new map if the key does not exist or is not a map
-                Map<String, Object> newMap = new LinkedHashMap<>();
-                currentMap.put(keys[i], newMap);
-                currentMap = newMap;
-            } else {
-                currentMap = (Map<String, Object>) mapValue;
+    private void synchronizedSave() {
+        synchronized (this) {
+            if (saveQueued) {
+                metrics.saveCoalesced();
+                return; // The queued save has not dumped yet, so it will include this change
+            }
+            saveQueued = true;
+        }
+        runAsync(() -> {
+            synchronized (this) {
+                saveQueued = false;
+            }
+            normalSave();
+        }).whenComplete(PottySnake::logFailure);
+    }
+
+    private static void logFailure(Void ignored, Throwable e) {
+        if (e != null) {
+            System.err.println("problem with I/O process \n" + Arrays.asList(e.getStackTrace()));
+        }
+    }
+
+    private synchronized Executor executor() {
+        if (closed) {
+            return Runnable::run; // The owned executor is shut down, run on the caller instead
+        }
+        if (executor == null) {
+            executor = Objects.requireNonNullElseGet(options.getExecutor(), this::newExecutor);
+        }
+        return executor;
+    }
+
+    private ExecutorService newExecutor() {
+        if (options.isVirtualThreads()) {
+            try {
+                // Java 21+, looked up reflectively since the library still targets Java 17
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Older runtime, fall back to a platform thread
             }
         }
 
-        currentMap.put(keys[keys.length - 1], value);
-        save();
+        // Tasks run one at a time anyway, so one thread is enough, it exits when idle so an unclosed instance never pins the JVM
+        String threadName = "PottySnake-IO-" + Path.of(filePath).getFileName();
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, threadName));
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    private synchronized Dump dump() {
+        long start = System.nanoTime();
+        String content;
+        Yaml yaml = YamlPool.borrow();
+        try {
+            boolean sections = options.isIncrementalSave() || data instanceof LazyMap; // Unparsed sections are copied as text
+            content = sections && !data.isEmpty() ? dumpSections(yaml) : yaml.dump(data);
+        } finally {
+            YamlPool.release(yaml);
+        }
+        dirty = false;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        long nanos = System.nanoTime() - start;
+        long nodes = new SaveEvent().isEnabled() ? countNodes(data) : 0; // Counted here, the write runs without the monitor
+        return new Dump(bytes, ++dumpVersion, nanos, nodes);
     }
 
     /**
-     * Removes an entry from the YAML data.
-     *
-     * @param key      The key for the entry, which can be a simple or nested key.
+     * Dumps the data one top-level section at a time. Lazy sections that were never parsed are copied as they
+     * are, and with {@link PottySnakeOptions#isIncrementalSave()} so is the YAML of every section that was not
+     * touched since the last dump. A node shared between sections through an anchor is written out in each of them.
      */
-    public void removeEntry(String key) throws IOException {
-        String[] keys = key.split("\\.");
-        Map<String, Object> currentMap = data;
+    private String dumpSections(Yaml yaml) {
+        StringBuilder content = new StringBuilder();
+        LazyMap lazyData = data instanceof LazyMap ? (LazyMap) data : null;
+        for (Object key : data.keySet()) { // Keys are not always strings, e.g. 1: one
+            String verbatim = lazyData == null ? null : lazyData.verbatim(key);
+            if (verbatim != null) {
+                content.append(verbatim); // Never parsed, so never changed
+                if (!verbatim.endsWith("\n")) {
+                    content.append('\n');
+                }
+                continue;
+            }
+            Object value = data.get(key);
+            if (!options.isIncrementalSave()) {
+                content.append(yaml.dump(Collections.singletonMap(key, value)));
+                continue;
+            }
+            Fragment fragment = fragments.get(key);
+            if (fragment == null || fragment.value() != value || touchedSections.contains(key)) {
+                fragment = new Fragment(value, yaml.dump(Collections.singletonMap(key, value)));
+                fragments.put(key, fragment);
+            }
+            content.append(fragment.yaml());
+        }
+        touchedSections.clear();
+        fragments.keySet().retainAll(data.keySet());
+        return content.toString();
+    }
 
-        for (int i = 0; i < keys.length - 1; i++) {
-            Object value = currentMap.get(keys[i]);
+    /**
+     * Marks a top-level section as changed, so the next save dumps it again and its subscribers are notified.
+     */
+    private void touch(Object section) {
+        if (options.isIncrementalSave()) {
+            touchedSections.add(section);
+        }
+        if (!subscriptions.isEmpty()) {
+            changedSections.add(section);
+        }
+    }
 
-            if (value instanceof Map) {
-                currentMap = (Map<String, Object>) value;
-            } else {
-                return; // The key does not exist in a structure
+    /**
+     * Drops every cached section, so the next save dumps the whole data.
+     */
+    private synchronized void invalidateSections() {
+        fragments.clear();
+        touchedSections.clear();
+    }
+
+    /**
+     * Reads the file and remembers its hash. Holds the write lock so the hash always describes
+     * what is on disk, even with a save running concurrently.
+     */
+    private FileContent read() throws IOException {
+        synchronized (writeLock) {
+            BasicFileAttributes attributes = attributes(); // Before the content, never newer
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(Path.of(filePath));
+            } catch (NoSuchFileException e) {
+                if (!options.isCreateIfMissing()) {
+                    throw e;
+                }
+                remember(null, null, null);
+                return new FileContent(new byte[0], null, null); // Loads as empty, the file is created by the first save
             }
+            remember(bytes, Hashes.sha256(bytes), attributes);
+            return new FileContent(bytes, diskHash, attributes);
         }
+    }
 
-        currentMap.remove(keys[keys.length - 1]);
-        save();
+    /**
+     * Checks if loads can parse the file while reading it. Lazy sections, the snapshot, the journal and
+     * merging conflicts all need the file's bytes after parsing, so they read the file whole.
+     */
+    private boolean streamsLoads() {
+        return !options.isLazySections() && !options.isSnapshot() && journal == null
+                && options.getConflictPolicy() != ConflictPolicy.MERGE;
     }
 
     /**
-     * Creates a new section in the YAML data. If the section already exists, it will be overwritten.
+     * Reads and parses the file in one pass, hashing it on the way, so it is never held in memory whole,
+     * neither as bytes nor as a String. The encoding is detected from the byte order mark, UTF-8 without one.
+     * Holds the write lock like {@link #read()}.
+     */
+    private ParsedContent readParsed() throws IOException {
+        synchronized (writeLock) {
+            BasicFileAttributes attributes = attributes(); // Before the content, never newer
+            MessageDigest digest = Hashes.sha256();
+            Map<String, Object> loadedData;
+            long size;
+            try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+                InputStream in = new DigestInputStream(Channels.newInputStream(channel), digest);
+                Yaml yaml = YamlPool.borrow();
+                try {
+                    loadedData = yaml.load(new UnicodeReader(in));
+                } finally {
+                    YamlPool.release(yaml);
+                }
+                in.transferTo(OutputStream.nullOutputStream()); // The hash covers the whole file
+                size = channel.position();
+            } catch (NoSuchFileException e) {
+                if (!options.isCreateIfMissing()) {
+                    throw e;
+                }
+                remember(null, null, null);
+                return new ParsedContent(new LinkedHashMap<>(), 0);
+            }
+            remember(null, digest.digest(), attributes);
+            return new ParsedContent(Objects.requireNonNullElseGet(loadedData, LinkedHashMap::new), size);
+        }
+    }
+
+    private void write(Dump dump) throws IOException {
+        SaveEvent event = new SaveEvent();
+        event.begin();
+        byte[] hash = Hashes.sha256(dump.content());
+        try {
+            synchronized (writeLock) {
+                if (dump.version() < writtenVersion) {
+                    metrics.saveCoalesced();
+                    saved(event, dump, false);
+                    return; // A newer dump already reached the file
+                }
+                if (Arrays.equals(hash, diskHash) && unchangedOnDisk()) {
+                    metrics.saveSkipped();
+                    writtenVersion = dump.version(); // The file still holds exactly this content
+                    saved(event, dump, false);
+                    return;
+                }
+                long start = measured ? System.nanoTime() : 0;
+                boolean written = false;
+                try (LockFile.Held ignored = options.isFileLock() ? LockFile.acquire(filePath) : LockFile.none()) {
+                    FileContent theirs = checksConflicts() ? readIfChanged() : null;
+                    if (theirs != null) {
+                        dump = resolveConflict(theirs);
+                        hash = Hashes.sha256(dump.content());
+                    }
+                    if (!checksConflicts() || !Arrays.equals(hash, diskHash)) { // Overwrites whatever someone else wrote
+                        AtomicFiles.write(Path.of(filePath), dump.content(), options.getDurability());
+                        remember(dump.content(), hash, attributes());
+                        written = true;
+                    }
+                }
+                writtenVersion = dump.version();
+                if (measured) {
+                    if (written) {
+                        metrics.saved(dump.nanos(), System.nanoTime() - start, dump.content().length);
+                    } else {
+                        metrics.saveSkipped(); // Resolving the conflict left the other writer's content
+                    }
+                    metrics.sized(data.size(), dump.content().length);
+                }
+                saved(event, dump, written);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+                if (options.isWriteBehind()) {
+                    scheduleFlush(); // Retried, otherwise the changes wait for the next mutation or close
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void saved(SaveEvent event, Dump dump, boolean written) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.filePath = filePath;
+            event.bytes = dump.content().length;
+            event.nodes = dump.nodes();
+            event.dumpDuration = dump.nanos();
+            event.written = written;
+            event.commit();
+        }
+    }
+
+    /**
+     * Checks by its modification time and size that nobody else wrote the file since this instance last
+     * read or wrote it, so a save of the same content can be skipped.
+     */
+    private boolean unchangedOnDisk() throws IOException {
+        BasicFileAttributes attributes = attributes();
+        return attributes != null && attributes.lastModifiedTime().equals(diskModified) && attributes.size() == diskSize;
+    }
+
+    private boolean checksConflicts() {
+        return options.getConflictPolicy() != ConflictPolicy.OVERWRITE;
+    }
+
+    /**
+     * Remembers what the file holds, as read or written by this instance. Called under the write lock.
      *
-     * @param section The section key, which can be a simple or nested key.
+     * @param attributes The file's attributes, read before the content if it was read, null if it does not exist.
      */
-    public void createSection(String section) throws IOException {
-        if (data.get(section) instanceof Map) {
-            return; // Section already exists as a map, do nothing
+    private void remember(byte[] bytes, byte[] hash, BasicFileAttributes attributes) {
+        diskHash = hash;
+        diskModified = attributes == null ? null : attributes.lastModifiedTime();
+        diskSize = attributes == null ? -1 : attributes.size();
+        if (options.getConflictPolicy() == ConflictPolicy.MERGE) {
+            diskContent = bytes;
+        }
+    }
+
+    private BasicFileAttributes attributes() throws IOException {
+        try {
+            return Files.readAttributes(Path.of(filePath), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
         }
-        data.put(section, null);
-        save();
     }
 
     /**
-     * Checks if a section exists in the YAML data.
+     * Reads the file if someone else changed it since this instance last read or wrote it.
+     * Only the attributes are read unless the modification time or size moved.
      *
-     * @param section  The section key, which can be a simple or nested key.
-     * @return true if the section exists, false otherwise.
+     * @return The new content, or null if the file still holds what this instance last saw or was deleted.
      */
-    public boolean hasSection(String section) {
-        Object value = getEntry(section);
-        return value instanceof Map;
+    private FileContent readIfChanged() throws IOException {
+        BasicFileAttributes attributes = attributes();
+        if (attributes == null) {
+            return null; // Deleted, the save creates it again
+        }
+        if (attributes.lastModifiedTime().equals(diskModified) && attributes.size() == diskSize) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Path.of(filePath));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        byte[] hash = Hashes.sha256(bytes);
+        if (Arrays.equals(hash, diskHash)) {
+            remember(bytes, hash, attributes); // Only touched
+            return null;
+        }
+        return new FileContent(bytes, hash, attributes);
     }
 
     /**
-     * Renames a section in the YAML data.
+     * Applies the conflict policy to a file someone else changed. Called under the monitor and the write lock.
      *
-     * @param oldSection The current section key.
-     * @param newSection The new section key.
+     * @param theirs The file's current content.
+     * @return The dump to write instead.
+     * @throws FileConflictException If the policy is to fail.
      */
-    public void renameSection(String oldSection, String newSection) throws IOException {
-        if (hasSection(oldSection)) {
-            Object sectionData = getEntry(oldSection);
-            removeEntry(oldSection);
-            setEntry(newSection, sectionData);
+    private Dump resolveConflict(FileContent theirs) throws IOException {
+        switch (options.getConflictPolicy()) {
+            case RELOAD_AND_REAPPLY -> {
+                List<List<Object>> mutations = new ArrayList<>(unsavedMutations);
+                replace(parse(theirs.bytes(), theirs.hash()), theirs.bytes());
+                replaying = true;
+                try {
+                    mutations.forEach(this::replay);
+                } finally {
+                    replaying = false;
+                }
+                unsavedMutations.addAll(mutations); // Until the write below succeeds
+            }
+            case MERGE -> {
+                Object base = loadTree(diskContent);
+                Object merged = merge(base, data, loadTree(theirs.bytes()));
+                replace((Map<String, Object>) merged, theirs.bytes());
+            }
+            default -> throw new FileConflictException(filePath);
+        }
+        remember(theirs.bytes(), theirs.hash(), theirs.attributes());
+        notifySubscribers();
+        return dump();
+    }
+
+    private static Map<String, Object> loadTree(byte[] bytes) {
+        if (bytes == null) {
+            return new LinkedHashMap<>();
+        }
+        Yaml yaml = YamlPool.borrow();
+        try {
+            Map<String, Object> tree = yaml.load(new String(bytes, StandardCharsets.UTF_8));
+            return Objects.requireNonNullElseGet(tree, LinkedHashMap::new);
+        } finally {
+            YamlPool.release(yaml);
         }
     }
 
     /**
-     * Creates a new list under the specified section in the YAML data.
-     * If the section already exists, it will be overwritten with a new list.
+     * Merges the changes both sides made to a common base. Maps are merged key by key, any other value
+     * is taken from the side that changed it, and from ours if both did. Absent entries are {@link #ABSENT}.
+     */
+    private static Object merge(Object base, Object ours, Object theirs) {
+        if (Objects.equals(ours, base)) {
+            return theirs;
+        }
+        if (Objects.equals(theirs, base) || Objects.equals(ours, theirs) || !(ours instanceof Map && theirs instanceof Map)) {
+            return ours;
+        }
+        Map<Object, Object> baseMap = base instanceof Map ? (Map<Object, Object>) base : Collections.emptyMap();
+        Map<Object, Object> ourMap = (Map<Object, Object>) ours;
+        Map<Object, Object> theirMap = (Map<Object, Object>) theirs;
+        Set<Object> keys = new LinkedHashSet<>(ourMap.keySet());
+        keys.addAll(theirMap.keySet()); // Keys both sides removed are in neither, and stay removed
+        Map<Object, Object> merged = new LinkedHashMap<>();
+        for (Object key : keys) {
+            Object value = merge(baseMap.containsKey(key) ? baseMap.get(key) : ABSENT,
+                    ourMap.containsKey(key) ? ourMap.get(key) : ABSENT,
+                    theirMap.containsKey(key) ? theirMap.get(key) : ABSENT);
+            if (value != ABSENT) {
+                merged.put(key, value);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Loads the YAML content from the file into the data map.
+     * If the file is empty or the content is invalid, an empty map is initialized.
+     * Any in-memory changes that were not flushed yet are discarded.
      *
-     * @param section The section key, which can be a simple or nested key.
+     * @throws IOException If the file cannot be read.
      */
-    public void createList(String section) throws IOException {
-        // Check if the section already exists and is a list
-        if (data.get(section) instanceof List) {
-            return; // Section already exists as a list, do nothing
+    public void load() throws IOException {
+        if (threadSafe) {
+            synchronizedLoad();
+        } else {
+            normalLoad();
         }
-        // Otherwise, create a new list under the section
-        data.put(section, new ArrayList<>());
-        save();
-    }
-
-    private DumperOptions getDumperOptions() {
-        final DumperOptions dumperOptions = new DumperOptions();
-        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        dumperOptions.setPrettyFlow(true);
-        dumperOptions.setIndent(4);
-        dumperOptions.setCanonical(false);
-        dumperOptions.setAllowReadOnlyProperties(false);
-        dumperOptions.setLineBreak(DumperOptions.LineBreak.UNIX);
-        return dumperOptions;
+    }
+
+    /**
+     * Saves the in-memory data map to the YAML file.
+     * The data is converted to a YAML-formatted string and written to a temp file,
+     * which then atomically replaces the file according to the configured {@link DurabilityPolicy}.
+     * Unlike the saves triggered by the mutators, this always dumps the whole data, so it also persists
+     * changes made directly to maps and lists returned by {@link #getEntry(String)}.
+     *
+     * @throws IOException If the file cannot be written to.
+     */
+    public void save() throws IOException {
+        invalidateSections();
+        persist();
+    }
+
+    private void persist() throws IOException {
+        if (threadSafe) {
+            synchronizedSave();
+        } else {
+            normalSave();
+        }
+    }
+
+    /**
+     * Loads the YAML content from the file into the data map on the background executor.
+     *
+     * @return A future that completes once the data is replaced, or fails with the {@link IOException}.
+     * @see #load()
+     */
+    public CompletableFuture<Void> loadAsync() {
+        return runAsync(this::normalLoad);
+    }
+
+    /**
+     * Dumps and writes the in-memory data map to the YAML file on the background executor.
+     *
+     * @return A future that completes once the file is written, or fails with the {@link IOException}.
+     * @see #save()
+     */
+    public CompletableFuture<Void> saveAsync() {
+        invalidateSections();
+        return runAsync(this::normalSave);
+    }
+
+    /**
+     * Writes pending changes to the YAML file on the calling thread, so they are on disk once it returns.
+     * Only needed in write-behind and thread-safe mode, otherwise every mutation is already saved when it returns.
+     *
+     * @throws IOException If the file cannot be written to.
+     */
+    public void flush() throws IOException {
+        boolean queued;
+        synchronized (taskLock) {
+            queued = !lastTask.isDone(); // A queued save may not have dumped yet, writing here covers it
+        }
+        if (isDirty() || queued) {
+            normalSave(); // Not persist(), which would only queue another save in thread-safe mode
+        }
+    }
+
+    /**
+     * Returns a SnakeYAML instance configured like the one PottySnake loads and dumps with.
+     * It belongs to this instance and, like every Yaml, must not be used by several threads at once.
+     * PottySnake itself borrows instances from a pool shared across the JVM instead.
+     *
+     * @return The instance, created on first use.
+     */
+    public synchronized Yaml getSnakeYaml() {
+        if (snakeYaml == null) {
+            snakeYaml = YamlPool.newYaml();
+        }
+        return snakeYaml;
+    }
+
+    /**
+     * Checks if the in-memory data has changes that are not written to the file yet.
+     *
+     * @return true if a flush is pending, false otherwise.
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Cancels the scheduled flush, writes pending changes to the YAML file and waits for background
+     * loads and saves to finish. An executor given in the options is left running for its owner to shut down.
+     * Mutations made after closing are saved immediately.
+     * An instance returned by {@link #open(String, PottySnakeOptions)} is only closed once every caller that
+     * opened it has closed it.
+     *
+     * @throws IOException If the file cannot be written to.
+     */
+    @Override
+    public void close() throws IOException {
+        if (registryEntry != null) {
+            InstanceRegistry.release(this, registryEntry);
+        } else {
+            closeInstance();
+        }
+    }
+
+    /**
+     * Closes the instance regardless of how many callers share it.
+     */
+    void closeInstance() throws IOException {
+        ScheduledFuture<?> pending;
+        ExecutorService ownedExecutor;
+        CompletableFuture<Void> background;
+        if (watchRegistration != null) {
+            FileWatcher.shared().unregister(watchRegistration);
+        }
+        synchronized (this) {
+            closed = true;
+            pending = scheduledFlush;
+            scheduledFlush = null;
+            ownedExecutor = executor != options.getExecutor() ? executor : null;
+        }
+        synchronized (taskLock) {
+            background = lastTask; // Tasks handed in from now on run on the caller, see executor()
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        try {
+            background.join(); // Also on an executor from the options, which is not shut down below
+        } catch (CompletionException | CancellationException e) {
+            // The task's own future reported it, or it was logged if nobody holds that future
+        }
+        if (isDirty()) {
+            normalSave(); // In the foreground, so the changes are on disk once close returns
+        }
+        if (journal != null) {
+            synchronized (this) {
+                journal.close();
+            }
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            try {
+                while (!ownedExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Keep draining, a large save can take a while
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieves a value from the YAML data using a key.
+     * The key can represent a nested path with dot notation.
+     *
+     * @param key The key to retrieve the value for.
+     * @return The value, or null if the key does not exist.
+     */
+    public Object getEntry(String key) {
+        return getEntry(KeyPath.cached(key));
+    }
+
+    /**
+     * Retrieves a value from the YAML data using a compiled key path.
+     *
+     * @param path The path to retrieve the value for.
+     * @return The value, or null if the path does not exist.
+     */
+    public Object getEntry(KeyPath path) {
+        LookupEvent event = new LookupEvent();
+        if (!measured && !event.isEnabled()) {
+            return readEntry(path);
+        }
+        long start = System.nanoTime();
+        event.begin();
+        Object value = readEntry(path);
+        event.end();
+        if (measured) {
+            metrics.lookedUp(System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.filePath = filePath;
+            event.key = path.toString();
+            event.commit();
+        }
+        return value;
+    }
+
+    private Object readEntry(KeyPath path) {
+        if (sectionLocks == null || Thread.holdsLock(this)) {
+            return lookup(path); // Every in-place change holds the monitor, so its holder reads without locks
+        }
+        return sectionLocks.read(path.segment(0), () -> lookup(path));
+    }
+
+    private Object lookup(KeyPath path) {
+        Map<String, Object> currentMap = readRoot();
+
+        for (int i = 0; i < path.size() - 1; i++) {
+            Object value = currentMap.get(path.segment(i));
+
+            if (value instanceof Map) {
+                currentMap = (Map<String, Object>) value;
+            } else {
+                return null; // The key does not exist
+            }
+        }
+
+        return currentMap.get(path.last());
+    }
+
+    /**
+     * Retrieves an integer value from the YAML data.
+     * Numbers of other types are narrowed like {@link Number#intValue()} does.
+     *
+     * @param key          The key to retrieve the value for.
+     * @param defaultValue The value to return if the key does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public int getInt(String key, int defaultValue) {
+        return getInt(KeyPath.cached(key), defaultValue);
+    }
+
+    /**
+     * Retrieves an integer value from the YAML data using a compiled key path.
+     *
+     * @param path         The path to retrieve the value for.
+     * @param defaultValue The value to return if the path does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public int getInt(KeyPath path, int defaultValue) {
+        Object value = getEntry(path);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves a long value from the YAML data.
+     *
+     * @param key          The key to retrieve the value for.
+     * @param defaultValue The value to return if the key does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public long getLong(String key, long defaultValue) {
+        return getLong(KeyPath.cached(key), defaultValue);
+    }
+
+    /**
+     * Retrieves a long value from the YAML data using a compiled key path.
+     *
+     * @param path         The path to retrieve the value for.
+     * @param defaultValue The value to return if the path does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public long getLong(KeyPath path, long defaultValue) {
+        Object value = getEntry(path);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves a double value from the YAML data.
+     *
+     * @param key          The key to retrieve the value for.
+     * @param defaultValue The value to return if the key does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public double getDouble(String key, double defaultValue) {
+        return getDouble(KeyPath.cached(key), defaultValue);
+    }
+
+    /**
+     * Retrieves a double value from the YAML data using a compiled key path.
+     *
+     * @param path         The path to retrieve the value for.
+     * @param defaultValue The value to return if the path does not exist or is not a number.
+     * @return The value, or the default value.
+     */
+    public double getDouble(KeyPath path, double defaultValue) {
+        Object value = getEntry(path);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves a boolean value from the YAML data.
+     *
+     * @param key          The key to retrieve the value for.
+     * @param defaultValue The value to return if the key does not exist or is not a boolean.
+     * @return The value, or the default value.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return getBoolean(KeyPath.cached(key), defaultValue);
+    }
+
+    /**
+     * Retrieves a boolean value from the YAML data using a compiled key path.
+     *
+     * @param path         The path to retrieve the value for.
+     * @param defaultValue The value to return if the path does not exist or is not a boolean.
+     * @return The value, or the default value.
+     */
+    public boolean getBoolean(KeyPath path, boolean defaultValue) {
+        Object value = getEntry(path);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    /**
+     * Adds an entry to the specified section in the YAML data.
+     * If the section is a map, the entry is added to it.
+     * If the section is a list, the value is appended to the list.
+     * If the section does not exist, it is created as a map and the entry is added.
+     *
+     * @param section The section under which the entry will be added.
+     * @param key     The key for the entry within the section, or null if adding to a list.
+     * @param value   The value to add for the entry.
+     */
+    public synchronized void addEntry(String section, String key, Object value) throws IOException {
+        long start = measured ? System.nanoTime() : 0;
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        Map<String, Object> root = writableRoot();
+        try (SectionLocks.Held ignored = lockSection(root, section, false)) {
+            Object sectionObject = root.get(section);
+
+            if (sectionObject instanceof Map) {
+                // Section exists and is a map, add the key-value pair to it
+                undoablePut(writableMap(root, section), key, frozen(value));
+            } else if (sectionObject instanceof List) {
+                // Section exists and is a list, append the value to the list
+                undoableAdd(writableList(root, section), frozen(value));
+            } else if (key == null) {
+                // If key is null, assume adding to a list and create a new list with the value
+                undoableAdd(newList(root, section), frozen(value));
+            } else {
+                // Section does not exist or is null, create a new map and add the key-value pair
+                undoablePut(newMap(root, section), key, frozen(value));
+            }
+        }
+        touch(section);
+        record("add", section, key, value);
+        changed();
+        mutated(start, event, "add", section);
+    }
+
+    /**
+     * Adds or updates an entry in the YAML data.
+     *
+     * @param key      The key for the entry, which can be a simple or nested key.
+     * @param value    The value to set for the entry.
+     */
+    public void setEntry(String key, Object value) throws IOException {
+        setEntry(KeyPath.cached(key), value);
+    }
+
+    /**
+     * Adds or updates an entry in the YAML data using a compiled key path.
+     *
+     * @param path  The path for the entry.
+     * @param value The value to set for the entry.
+     */
+    public synchronized void setEntry(KeyPath path, Object value) throws IOException {
+        long start = measured ? System.nanoTime() : 0;
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        applySet(path, value);
+        changed();
+        mutated(start, event, "set", path);
+    }
+
+    /**
+     * Sets an entry without saving or reporting the mutation, shared by setEntry and renameSection.
+     */
+    private void applySet(KeyPath path, Object value) {
+        Map<String, Object> currentMap = writableRoot();
+
+        try (SectionLocks.Held ignored = lockSection(currentMap, path.segment(0), false)) {
+            for (int i = 0; i < path.size() - 1; i++) {
+                Map<String, Object> childMap = writableMap(currentMap, path.segment(i));
+
+                if (childMap == null) {
+                    // Create a new map if the key does not exist or is not a map
+                    childMap = newMap(currentMap, path.segment(i));
+                }
+                currentMap = childMap;
+            }
+
+            undoablePut(currentMap, path.last(), frozen(value));
+        }
+        touch(path.segment(0));
+        record("set", path.toString(), value);
+    }
+
+    /**
+     * Removes an entry from the YAML data.
+     *
+     * @param key      The key for the entry, which can be a simple or nested key.
+     */
+    public void removeEntry(String key) throws IOException {
+        removeEntry(KeyPath.cached(key));
+    }
+
+    /**
+     * Removes an entry from the YAML data using a compiled key path.
+     *
+     * @param path The path for the entry.
+     */
+    public synchronized void removeEntry(KeyPath path) throws IOException {
+        long start = measured ? System.nanoTime() : 0;
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        if (!applyRemove(path)) {
+            return;
+        }
+        changed();
+        mutated(start, event, "remove", path);
+    }
+
+    /**
+     * Removes an entry without saving or reporting the mutation, shared by removeEntry and renameSection.
+     *
+     * @return false if a map on the path does not exist, so nothing changed.
+     */
+    private boolean applyRemove(KeyPath path) {
+        Map<String, Object> currentMap = writableRoot();
+
+        try (SectionLocks.Held ignored = lockSection(currentMap, path.segment(0), path.size() == 1)) {
+            for (int i = 0; i < path.size() - 1; i++) {
+                currentMap = writableMap(currentMap, path.segment(i));
+
+                if (currentMap == null) {
+                    return false; // The key does not exist in a structure
+                }
+            }
+
+            undoableRemove(currentMap, path.last());
+        }
+        touch(path.segment(0));
+        record("remove", path.toString());
+        return true;
+    }
+
+    /**
+     * Creates a new section in the YAML data. If the section already exists, it will be overwritten.
+     *
+     * @param section The section key, which can be a simple or nested key.
+     */
+    public synchronized void createSection(String section) throws IOException {
+        if (readRoot().get(section) instanceof Map) {
+            return; // Section already exists as a map, do nothing
+        }
+        long start = measured ? System.nanoTime() : 0;
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        Map<String, Object> root = writableRoot();
+        try (SectionLocks.Held ignored = lockSection(root, section, false)) {
+            undoablePut(root, section, null);
+        }
+        touch(section);
+        record("section", section);
+        changed();
+        mutated(start, event, "section", section);
+    }
+
+    /**
+     * Checks if a section exists in the YAML data.
+     *
+     * @param section  The section key, which can be a simple or nested key.
+     * @return true if the section exists, false otherwise.
+     */
+    public boolean hasSection(String section) {
+        Object value = getEntry(section);
+        return value instanceof Map;
+    }
+
+    /**
+     * Renames a section in the YAML data.
+     *
+     * @param oldSection The current section key.
+     * @param newSection The new section key.
+     */
+    public synchronized void renameSection(String oldSection, String newSection) throws IOException {
+        if (hasSection(oldSection)) {
+            long start = measured ? System.nanoTime() : 0;
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            Object sectionData = getEntry(oldSection);
+            // One save and one reported mutation, the journal still records the removal and the set
+            applyRemove(KeyPath.cached(oldSection));
+            applySet(KeyPath.cached(newSection), sectionData);
+            changed();
+            mutated(start, event, "rename", oldSection);
+        }
+    }
+
+    /**
+     * Creates a new list under the specified section in the YAML data.
+     * If the section already exists, it will be overwritten with a new list.
+     *
+     * @param section The section key, which can be a simple or nested key.
+     */
+    public synchronized void createList(String section) throws IOException {
+        // Check if the section already exists and is a list
+        if (readRoot().get(section) instanceof List) {
+            return; // Section already exists as a list, do nothing
+        }
+        // Otherwise, create a new list under the section
+        long start = measured ? System.nanoTime() : 0;
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        Map<String, Object> root = writableRoot();
+        try (SectionLocks.Held ignored = lockSection(root, section, false)) {
+            newList(root, section);
+        }
+        touch(section);
+        record("list", section);
+        changed();
+        mutated(start, event, "list", section);
+    }
+
+    /**
+     * Atomically replaces an entry with the result of the given function.
+     *
+     * @param key       The key for the entry, which can be a simple or nested key.
+     * @param remapping Computes the new value from the key and the current value, which is null if the entry
+     *                  does not exist. Returning null removes the entry.
+     * @return The new value.
+     */
+    public Object compute(String key, BiFunction<String, Object, Object> remapping) throws IOException {
+        return compute(KeyPath.cached(key), remapping);
+    }
+
+    /**
+     * Atomically replaces an entry with the result of the given function using a compiled key path.
+     *
+     * @param path      The path for the entry.
+     * @param remapping Computes the new value from the key and the current value, which is null if the entry
+     *                  does not exist. Returning null removes the entry.
+     * @return The new value.
+     */
+    public synchronized Object compute(KeyPath path, BiFunction<String, Object, Object> remapping) throws IOException {
+        Object oldValue = getEntry(path);
+        Object newValue = remapping.apply(path.toString(), oldValue);
+        if (newValue != null) {
+            setEntry(path, newValue);
+        } else if (oldValue != null) {
+            removeEntry(path);
+        }
+        return newValue;
+    }
+
+    /**
+     * Atomically sets an entry that does not exist yet.
+     *
+     * @param key     The key for the entry, which can be a simple or nested key.
+     * @param mapping Computes the value from the key, returning null leaves the entry absent.
+     * @return The current value if the entry exists, the computed value otherwise.
+     */
+    public Object computeIfAbsent(String key, Function<String, Object> mapping) throws IOException {
+        return computeIfAbsent(KeyPath.cached(key), mapping);
+    }
+
+    /**
+     * Atomically sets an entry that does not exist yet using a compiled key path.
+     *
+     * @param path    The path for the entry.
+     * @param mapping Computes the value from the key, returning null leaves the entry absent.
+     * @return The current value if the entry exists, the computed value otherwise.
+     */
+    public synchronized Object computeIfAbsent(KeyPath path, Function<String, Object> mapping) throws IOException {
+        Object value = getEntry(path);
+        if (value == null) {
+            value = mapping.apply(path.toString());
+            if (value != null) {
+                setEntry(path, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Atomically sets an entry, or combines it with its current value.
+     *
+     * <pre>{@code
+     * pottySnake.merge("stats.hosts", List.of(host), (hosts, added) -> concat(hosts, added));
+     * }</pre>
+     *
+     * @param key       The key for the entry, which can be a simple or nested key.
+     * @param value     The value to set if the entry does not exist, or to combine with the current one.
+     * @param remapping Combines the current value and the given value. Returning null removes the entry.
+     * @return The new value.
+     */
+    public Object merge(String key, Object value, BinaryOperator<Object> remapping) throws IOException {
+        return merge(KeyPath.cached(key), value, remapping);
+    }
+
+    /**
+     * Atomically sets an entry, or combines it with its current value, using a compiled key path.
+     *
+     * @param path      The path for the entry.
+     * @param value     The value to set if the entry does not exist, or to combine with the current one.
+     * @param remapping Combines the current value and the given value. Returning null removes the entry.
+     * @return The new value.
+     */
+    public synchronized Object merge(KeyPath path, Object value, BinaryOperator<Object> remapping) throws IOException {
+        Objects.requireNonNull(value, "value");
+        return compute(path, (key, oldValue) -> oldValue == null ? value : remapping.apply(oldValue, value));
+    }
+
+    /**
+     * Atomically sets an entry if its current value equals the expected one.
+     * Integers compare by value, so an Integer matches a Long of the same value.
+     *
+     * @param key      The key for the entry, which can be a simple or nested key.
+     * @param expected The value the entry must currently have, null if it must not exist.
+     * @param newValue The value to set.
+     * @return true if the entry was set, false if its value did not match.
+     */
+    public boolean compareAndSet(String key, Object expected, Object newValue) throws IOException {
+        return compareAndSet(KeyPath.cached(key), expected, newValue);
+    }
+
+    /**
+     * Atomically sets an entry if its current value equals the expected one, using a compiled key path.
+     *
+     * @param path     The path for the entry.
+     * @param expected The value the entry must currently have, null if it must not exist.
+     * @param newValue The value to set.
+     * @return true if the entry was set, false if its value did not match.
+     */
+    public synchronized boolean compareAndSet(KeyPath path, Object expected, Object newValue) throws IOException {
+        if (!matches(getEntry(path), expected)) {
+            return false;
+        }
+        setEntry(path, newValue);
+        return true;
+    }
+
+    /**
+     * Compares like {@link Objects#equals}, except that integers of different types compare by value.
+     */
+    private static boolean matches(Object actual, Object expected) {
+        if (isIntegral(actual) && isIntegral(expected)) {
+            return ((Number) actual).longValue() == ((Number) expected).longValue();
+        }
+        return Objects.equals(actual, expected);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Atomically adds to a numeric entry. A missing entry counts as zero.
+     * The result is stored as an Integer if it fits, like SnakeYAML loads it, and as a Long otherwise.
+     *
+     * @param key   The key for the entry, which can be a simple or nested key.
+     * @param delta The amount to add, may be negative.
+     * @return The new value.
+     * @throws IllegalStateException If the entry exists but is not an integer.
+     */
+    public long incrementAndGet(String key, long delta) throws IOException {
+        return incrementAndGet(KeyPath.cached(key), delta);
+    }
+
+    /**
+     * Atomically adds to a numeric entry using a compiled key path. A missing entry counts as zero.
+     *
+     * @param path  The path for the entry.
+     * @param delta The amount to add, may be negative.
+     * @return The new value.
+     * @throws IllegalStateException If the entry exists but is not an integer.
+     */
+    public synchronized long incrementAndGet(KeyPath path, long delta) throws IOException {
+        Object value = getEntry(path);
+        if (value != null && !(value instanceof Integer || value instanceof Long)) {
+            throw new IllegalStateException("Entry '" + path + "' is not an integer: " + value);
+        }
+        long result = Math.addExact(value == null ? 0 : ((Number) value).longValue(), delta);
+        // Boxed on each side, a ternary of Integer and Long would unbox both and always store a Long
+        Object stored = (int) result == result ? (Object) (int) result : (Object) result;
+        setEntry(path, stored);
+        return result;
+    }
+
+    /**
+     * Adds or updates an entry on the background executor.
+     *
+     * @param key   The key for the entry, which can be a simple or nested key.
+     * @param value The value to set for the entry.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #setEntry(String, Object)
+     */
+    public CompletableFuture<Void> setEntryAsync(String key, Object value) {
+        return mutateAsync(() -> setEntry(key, value));
+    }
+
+    /**
+     * Adds or updates an entry on the background executor using a compiled key path.
+     *
+     * @param path  The path for the entry.
+     * @param value The value to set for the entry.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #setEntry(KeyPath, Object)
+     */
+    public CompletableFuture<Void> setEntryAsync(KeyPath path, Object value) {
+        return mutateAsync(() -> setEntry(path, value));
+    }
+
+    /**
+     * Adds an entry to the specified section on the background executor.
+     *
+     * @param section The section under which the entry will be added.
+     * @param key     The key for the entry within the section, or null if adding to a list.
+     * @param value   The value to add for the entry.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #addEntry(String, String, Object)
+     */
+    public CompletableFuture<Void> addEntryAsync(String section, String key, Object value) {
+        return mutateAsync(() -> addEntry(section, key, value));
+    }
+
+    /**
+     * Removes an entry on the background executor.
+     *
+     * @param key The key for the entry, which can be a simple or nested key.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #removeEntry(String)
+     */
+    public CompletableFuture<Void> removeEntryAsync(String key) {
+        return mutateAsync(() -> removeEntry(key));
+    }
+
+    /**
+     * Removes an entry on the background executor using a compiled key path.
+     *
+     * @param path The path for the entry.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #removeEntry(KeyPath)
+     */
+    public CompletableFuture<Void> removeEntryAsync(KeyPath path) {
+        return mutateAsync(() -> removeEntry(path));
+    }
+
+    /**
+     * Creates a new section on the background executor.
+     *
+     * @param section The section key.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #createSection(String)
+     */
+    public CompletableFuture<Void> createSectionAsync(String section) {
+        return mutateAsync(() -> createSection(section));
+    }
+
+    /**
+     * Renames a section on the background executor.
+     *
+     * @param oldSection The current section key.
+     * @param newSection The new section key.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #renameSection(String, String)
+     */
+    public CompletableFuture<Void> renameSectionAsync(String oldSection, String newSection) {
+        return mutateAsync(() -> renameSection(oldSection, newSection));
+    }
+
+    /**
+     * Creates a new list on the background executor.
+     *
+     * @param section The section key.
+     * @return A future that completes once the change is saved, or scheduled in write-behind mode.
+     * @see #createList(String)
+     */
+    public CompletableFuture<Void> createListAsync(String section) {
+        return mutateAsync(() -> createList(section));
+    }
+
+    /**
+     * Applies several mutations on the background executor and saves the file once at the end.
+     *
+     * @param action The mutations to apply.
+     * @return A future that completes once the changes are saved, or fails with the exception
+     *         the action threw after the data was rolled back.
+     * @see #batch(Consumer)
+     */
+    public CompletableFuture<Void> batchAsync(Consumer<Batch> action) {
+        return mutateAsync(() -> batch(action));
+    }
+
+    /**
+     * Applies several mutations to the YAML data and saves the file once at the end.
+     * If the action throws, the data is rolled back to its state before the batch and nothing is saved.
+     * The rollback undoes the batch's own changes one by one, so a batch costs what its mutations cost,
+     * not a copy of the data.
+     *
+     * <pre>{@code
+     * pottySnake.batch(batch -> {
+     *     batch.set("database.pool.size", 16);
+     *     batch.remove("database.legacy");
+     *     batch.add("hosts", null, "10.0.0.2");
+     * });
+     * }</pre>
+     *
+     * @param action The mutations to apply.
+     * @throws IOException If the file cannot be written to.
+     */
+    public synchronized void batch(Consumer<Batch> action) throws IOException {
+        Map<String, Object> backup = null;
+        boolean ownsLog = !copyOnWrite && undoLog == null;
+        if (copyOnWrite) {
+            // The published data is untouched until the batch completes, only a nested batch needs a backup
+            backup = working == null ? null : (Map<String, Object>) immutableCopy(working);
+        } else if (ownsLog) {
+            undoLog = new ArrayList<>();
+        }
+        int undoMark = copyOnWrite ? 0 : undoLog.size(); // A nested batch only undoes its own changes
+        int recordMark = pendingRecords.size();
+        int mutationMark = unsavedMutations.size();
+        try {
+            deferSaves(() -> action.accept(new Batch()));
+        } catch (RuntimeException | Error e) {
+            if (copyOnWrite) {
+                ownedCopies.clear();
+                working = backup == null ? null : new LinkedHashMap<>(backup);
+            } else {
+                undo(undoMark);
+            }
+            fragments.clear();
+            pendingRecords.subList(recordMark, pendingRecords.size()).clear();
+            unsavedMutations.subList(mutationMark, unsavedMutations.size()).clear();
+            if (batchDepth == 0) {
+                batchChanged = false;
+            }
+            throw e;
+        } finally {
+            if (ownsLog) {
+                undoLog = null;
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for the entries at and below a key prefix.
+     * The listener is called on the instance's executor after every mutation, batch or reload that changed
+     * one of those entries, with the old and new value of each changed entry. A batch is delivered as one call,
+     * and calls for the same subscription arrive in order. Changes made directly to maps or lists returned by
+     * {@link #getEntry(String)} are not seen.
+     *
+     * <pre>{@code
+     * pottySnake.subscribe("database.pool", changes -> pool.resize(changes));
+     * }</pre>
+     *
+     * @param prefix   The key to watch, which can be a simple or nested key.
+     * @param listener The listener to notify.
+     */
+    public synchronized void subscribe(String prefix, ChangeListener listener) {
+        subscriptions.add(new Subscription(KeyPath.of(prefix), Objects.requireNonNull(listener, "listener")));
+    }
+
+    /**
+     * Removes every subscription of a listener. Notifications that are already queued are still delivered.
+     *
+     * @param listener The listener to remove.
+     * @return true if the listener was subscribed, false otherwise.
+     */
+    public synchronized boolean unsubscribe(ChangeListener listener) {
+        return subscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    /**
+     * Runs the given mutations and saves once afterward instead of once per mutation.
+     * Nested calls only save when the outermost one completes.
+     */
+    private void deferSaves(IOAction action) throws IOException {
+        if (applyDeferred(action)) {
+            changed();
+        }
+    }
+
+    /**
+     * Runs the given mutations with saves deferred.
+     *
+     * @return true if this was the outermost call and the data changed, meaning a save is due.
+     */
+    private boolean applyDeferred(IOAction action) throws IOException {
+        batchDepth++;
+        try {
+            action.apply();
+        } finally {
+            batchDepth--;
+        }
+        if (batchDepth == 0 && batchChanged) {
+            batchChanged = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs a mutator on the background executor and saves on that same thread,
+     * so the returned future only completes once the change reached the file.
+     */
+    private CompletableFuture<Void> mutateAsync(IOAction mutation) {
+        return runAsync(() -> {
+            synchronized (this) {
+                if (applyDeferred(mutation)) {
+                    changed(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the executor once every task handed in before it completed, so loads, saves and async
+     * mutations apply in call order even on virtual threads or a multi-threaded executor from the options.
+     */
+    private CompletableFuture<Void> runAsync(IOAction task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> previous;
+        synchronized (taskLock) {
+            previous = lastTask;
+            lastTask = future;
+        }
+        previous.whenComplete((ignored, failure) -> {
+            try {
+                executor().execute(() -> {
+                    try {
+                        task.apply();
+                        future.complete(null);
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Keeps readers out of a section while a mutator changes it in place. The root is locked as well
+     * if the top-level key is removed, or added because it does not exist yet.
+     */
+    private SectionLocks.Held lockSection(Map<String, Object> root, Object section, boolean removing) {
+        if (sectionLocks == null) {
+            return SectionLocks.none();
+        }
+        return sectionLocks.write(section, removing || !root.containsKey(section));
+    }
+
+    /**
+     * Returns the root that reads should see. While the monitor holder runs a copy-on-write
+     * mutation or batch, it sees its own unpublished changes.
+     */
+    private Map<String, Object> readRoot() {
+        Map<String, Object> pending = working;
+        return pending != null && Thread.holdsLock(this) ? pending : data;
+    }
+
+    /**
+     * Returns the root map that mutators write into.
+     * In copy-on-write mode this is a private copy, published by {@link #changed()}.
+     */
+    private Map<String, Object> writableRoot() {
+        if (!copyOnWrite) {
+            return data;
+        }
+        if (working == null) {
+            working = new LinkedHashMap<>(data);
+        }
+        return working;
+    }
+
+    /**
+     * Returns the map under the key of a writable parent, or null if the value is not a map.
+     * In copy-on-write mode the map is copied the first time it is written to.
+     */
+    private Map<String, Object> writableMap(Map<String, Object> parent, String key) {
+        Object value = parent.get(key);
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        if (!copyOnWrite) {
+            return (Map<String, Object>) value;
+        }
+        Map<String, Object> copy = (Map<String, Object>) ownedCopies.get(value);
+        if (copy == null) {
+            copy = new LinkedHashMap<>((Map<String, Object>) value);
+            Map<String, Object> view = Collections.unmodifiableMap(copy);
+            ownedCopies.put(view, copy);
+            parent.put(key, view);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the list under the key of a writable parent, the value must be a list.
+     * In copy-on-write mode the list is copied the first time it is written to.
+     */
+    private List<Object> writableList(Map<String, Object> parent, String key) {
+        List<Object> value = (List<Object>) parent.get(key);
+        if (!copyOnWrite) {
+            return value;
+        }
+        List<Object> copy = (List<Object>) ownedCopies.get(value);
+        if (copy == null) {
+            copy = new ArrayList<>(value);
+            List<Object> view = Collections.unmodifiableList(copy);
+            ownedCopies.put(view, copy);
+            parent.put(key, view);
+        }
+        return copy;
+    }
+
+    private Map<String, Object> newMap(Map<String, Object> parent, String key) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (copyOnWrite) {
+            Map<String, Object> view = Collections.unmodifiableMap(map);
+            ownedCopies.put(view, map);
+            parent.put(key, view);
+        } else {
+            undoablePut(parent, key, map);
+        }
+        return map;
+    }
+
+    private List<Object> newList(Map<String, Object> parent, String key) {
+        List<Object> list = new ArrayList<>();
+        if (copyOnWrite) {
+            List<Object> view = Collections.unmodifiableList(list);
+            ownedCopies.put(view, list);
+            parent.put(key, view);
+        } else {
+            undoablePut(parent, key, list);
+        }
+        return list;
+    }
+
+    /**
+     * Puts a value into a writable map, logging how to undo it while a batch runs.
+     */
+    private void undoablePut(Map<String, Object> map, String key, Object value) {
+        boolean existed = undoLog != null && map.containsKey(key);
+        Object previous = existed ? rawGet(map, key) : null;
+        map.put(key, value);
+        if (undoLog != null) {
+            undoLog.add(existed ? () -> rawPut(map, key, previous) : () -> map.remove(key));
+        }
+    }
+
+    /**
+     * Removes a key from a writable map, logging how to put it back at its position while a batch runs.
+     */
+    private void undoableRemove(Map<String, Object> map, String key) {
+        if (undoLog == null || !map.containsKey(key)) {
+            map.remove(key);
+            return;
+        }
+        int index = 0;
+        for (Object other : map.keySet()) {
+            if (Objects.equals(other, key)) {
+                break;
+            }
+            index++;
+        }
+        Object previous = rawGet(map, key);
+        map.remove(key);
+        int position = index;
+        undoLog.add(() -> insert(map, position, key, previous));
+    }
+
+    /**
+     * Appends to a writable list, logging how to undo it while a batch runs.
+     */
+    private void undoableAdd(List<Object> list, Object value) {
+        list.add(value);
+        if (undoLog != null) {
+            int index = list.size() - 1;
+            undoLog.add(() -> list.remove(index));
+        }
+    }
+
+    /**
+     * Undoes the logged changes down to the mark, latest first. Readers are kept out of every section meanwhile.
+     */
+    private void undo(int mark) {
+        try (SectionLocks.Held ignored = sectionLocks == null ? SectionLocks.none() : sectionLocks.writeAll()) {
+            for (int i = undoLog.size() - 1; i >= mark; i--) {
+                undoLog.remove(i).run();
+            }
+        }
+    }
+
+    // Unparsed lazy sections are read and put back as they are
+    private static Object rawGet(Map<String, Object> map, String key) {
+        return map instanceof LazyMap ? ((LazyMap) map).raw(key) : map.get(key);
+    }
+
+    private static void rawPut(Map<String, Object> map, String key, Object value) {
+        if (map instanceof LazyMap) {
+            ((LazyMap) map).putRaw(key, value);
+        } else {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Puts a key back at a position of a map's key order, by moving every later entry behind it.
+     */
+    private static void insert(Map<String, Object> map, int index, String key, Object value) {
+        if (map instanceof LazyMap) {
+            ((LazyMap) map).insertRaw(index, key, value);
+            return;
+        }
+        List<Map.Entry<String, Object>> tail = new ArrayList<>();
+        Iterator<Map.Entry<String, Object>> entries = map.entrySet().iterator();
+        for (int i = 0; entries.hasNext(); i++) {
+            Map.Entry<String, Object> entry = entries.next();
+            if (i >= index) {
+                tail.add(new AbstractMap.SimpleEntry<>(entry));
+                entries.remove();
+            }
+        }
+        map.put(key, value);
+        tail.forEach(entry -> map.put(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Returns the value to store for a caller supplied value.
+     * In copy-on-write mode maps and lists are copied, so the caller cannot modify the published data.
+     */
+    private Object frozen(Object value) {
+        return copyOnWrite ? immutableCopy(value) : value;
+    }
+
+    /**
+     * Swaps the copy-on-write root in, making the running mutation visible to readers at once.
+     */
+    private void publish() {
+        if (working != null) {
+            data = Collections.unmodifiableMap(working);
+            working = null;
+            ownedCopies.clear();
+        }
+    }
+
+    private static Object immutableCopy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>((Map<String, Object>) value);
+            copy.replaceAll((key, element) -> immutableCopy(element));
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+            for (Object element : (List<Object>) value) {
+                copy.add(immutableCopy(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    private static Map<String, Object> deepCopy(Map<String, Object> map) {
+        if (map instanceof LazyMap) {
+            return ((LazyMap) map).copy(PottySnake::deepCopyValue); // Leaves the unparsed sections unparsed
+        }
+        Map<String, Object> copy = new LinkedHashMap<>(map);
+        copy.replaceAll((key, value) -> deepCopyValue(value));
+        return copy;
+    }
+
+    private static Object deepCopyValue(Object value) {
+        if (value instanceof Map) {
+            return deepCopy((Map<String, Object>) value);
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+            for (Object element : (List<Object>) value) {
+                copy.add(deepCopyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Diffs the subtree of every subscription whose section changed and queues the changes for its listener.
+     */
+    private void notifySubscribers() {
+        if (!subscriptions.isEmpty()) {
+            for (Subscription subscription : subscriptions) {
+                if (reloaded || changedSections.contains(subscription.prefix.segment(0))) {
+                    subscription.refresh();
+                }
+            }
+        }
+        changedSections.clear();
+        reloaded = false;
+    }
+
+    /**
+     * Counts the entries and list elements below a value, a lazy section that was not parsed counts as one.
+     */
+    private static long countNodes(Object value) {
+        long nodes = 0;
+        if (value instanceof LazyMap) {
+            LazyMap lazyMap = (LazyMap) value;
+            for (String key : lazyMap.keySet()) {
+                nodes += 1 + (lazyMap.verbatim(key) != null ? 0 : countNodes(lazyMap.get(key)));
+            }
+        } else if (value instanceof Map) {
+            for (Object child : ((Map<?, ?>) value).values()) {
+                nodes += 1 + countNodes(child);
+            }
+        } else if (value instanceof Collection) {
+            for (Object child : (Collection<?>) value) {
+                nodes += 1 + countNodes(child);
+            }
+        }
+        return nodes;
+    }
+
+    private static void diff(String key, Object oldValue, Object newValue, List<EntryChange> changes) {
+        if (oldValue instanceof Map && newValue instanceof Map) {
+            Map<Object, Object> oldMap = (Map<Object, Object>) oldValue;
+            Map<Object, Object> newMap = (Map<Object, Object>) newValue;
+            for (Map.Entry<Object, Object> entry : oldMap.entrySet()) {
+                diff(key + "." + entry.getKey(), entry.getValue(), newMap.get(entry.getKey()), changes);
+            }
+            for (Map.Entry<Object, Object> entry : newMap.entrySet()) {
+                if (!oldMap.containsKey(entry.getKey())) {
+                    diff(key + "." + entry.getKey(), null, entry.getValue(), changes);
+                }
+            }
+        } else if (!Objects.equals(oldValue, newValue)) {
+            changes.add(new EntryChange(key, oldValue, newValue));
+        }
+    }
+
+    /**
+     * Reports a completed mutation to the metrics and the JFR event.
+     */
+    private void mutated(long start, MutationEvent event, String operation, Object key) {
+        if (measured) {
+            metrics.mutated(System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.filePath = filePath;
+            event.operation = operation;
+            event.key = String.valueOf(key);
+            event.commit();
+        }
+    }
+
+    /**
+     * Called by every mutator after the in-memory data changed.
+     * Saves right away, or marks the data dirty and schedules a flush in write-behind mode.
+     */
+    private void changed() throws IOException {
+        changed(false);
+    }
+
+    /**
+     * @param foreground If true, a due save runs on the calling thread even in thread-safe mode.
+     */
+    private void changed(boolean foreground) throws IOException {
+        if (batchDepth > 0) {
+            batchChanged = true;
+            return;
+        }
+        publish();
+        if (replaying) {
+            return;
+        }
+        notifySubscribers();
+        if (journal != null && !closed) {
+            appendJournal(foreground);
+            return;
+        }
+        if (closed || foreground && !options.isWriteBehind()) {
+            normalSave(); // Once closed, the executor and the scheduled flush are gone
+            return;
+        }
+        if (!options.isWriteBehind()) {
+            persist();
+            return;
+        }
+        dirty = true;
+        scheduleFlush();
+    }
+
+    // Flushes once the flush interval passed, unless a flush is already scheduled. Called under the monitor
+    private void scheduleFlush() {
+        if (scheduledFlush == null && !closed) {
+            long delay = options.getFlushInterval().toNanos();
+            scheduledFlush = Flusher.SCHEDULER.schedule(this::scheduledFlush, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a mutation for the journal, it is appended once the mutation or batch completes.
+     */
+    private void record(Object... record) {
+        if (journal != null && !replaying) {
+            pendingRecords.add(Journal.encode(record));
+        }
+        if (options.getConflictPolicy() == ConflictPolicy.RELOAD_AND_REAPPLY && !replaying) {
+            unsavedMutations.add(Arrays.asList(record));
+        }
+    }
+
+    private void appendJournal(boolean foreground) throws IOException {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        try {
+            journal.append(pendingRecords);
+        } catch (IOException e) {
+            dirty = true; // Not journaled, the next flush or close compacts the data instead
+            throw e;
+        } finally {
+            pendingRecords.clear();
+        }
+
+        long interval = options.getJournalCompactionInterval().toNanos();
+        if (journal.size() >= options.getJournalCompactionSize() || interval > 0 && journal.age() >= interval) {
+            if (foreground) {
+                normalSave();
+            } else {
+                persist();
+            }
+        }
+    }
+
+    private void scheduledFlush() {
+        synchronized (this) {
+            scheduledFlush = null;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("problem with I/O process \n" + Arrays.asList(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * The mutations available inside {@link #batch(Consumer)}.
+     * Every method delegates to the matching PottySnake mutator, the file is only saved once the batch completes.
+     */
+    public final class Batch {
+
+        private Batch() {
+        }
+
+        /**
+         * Retrieves a value, including the changes made earlier in this batch.
+         *
+         * @param key The key to retrieve the value for.
+         * @return The value, or null if the key does not exist.
+         * @see PottySnake#getEntry(String)
+         */
+        public Object get(String key) {
+            return getEntry(key);
+        }
+
+        /**
+         * Adds or updates an entry.
+         *
+         * @param key   The key for the entry, which can be a simple or nested key.
+         * @param value The value to set for the entry.
+         * @return This batch, for chaining.
+         * @see PottySnake#setEntry(String, Object)
+         */
+        public Batch set(String key, Object value) {
+            return apply(() -> setEntry(key, value));
+        }
+
+        /**
+         * Removes an entry.
+         *
+         * @param key The key for the entry, which can be a simple or nested key.
+         * @return This batch, for chaining.
+         * @see PottySnake#removeEntry(String)
+         */
+        public Batch remove(String key) {
+            return apply(() -> removeEntry(key));
+        }
+
+        /**
+         * Adds an entry to a section, or appends the value if the section is a list.
+         *
+         * @param section The section under which the entry will be added.
+         * @param key     The key for the entry within the section, or null if adding to a list.
+         * @param value   The value to add for the entry.
+         * @return This batch, for chaining.
+         * @see PottySnake#addEntry(String, String, Object)
+         */
+        public Batch add(String section, String key, Object value) {
+            return apply(() -> addEntry(section, key, value));
+        }
+
+        /**
+         * Creates a new section.
+         *
+         * @param section The section key.
+         * @return This batch, for chaining.
+         * @see PottySnake#createSection(String)
+         */
+        public Batch createSection(String section) {
+            return apply(() -> PottySnake.this.createSection(section));
+        }
+
+        /**
+         * Creates a new list.
+         *
+         * @param section The section key.
+         * @return This batch, for chaining.
+         * @see PottySnake#createList(String)
+         */
+        public Batch createList(String section) {
+            return apply(() -> PottySnake.this.createList(section));
+        }
+
+        /**
+         * Renames a section.
+         *
+         * @param oldSection The current section key.
+         * @param newSection The new section key.
+         * @return This batch, for chaining.
+         * @see PottySnake#renameSection(String, String)
+         */
+        public Batch renameSection(String oldSection, String newSection) {
+            return apply(() -> PottySnake.this.renameSection(oldSection, newSection));
+        }
+
+        private Batch apply(IOAction mutation) {
+            try {
+                mutation.apply(); // Saves are deferred while the batch runs, so this does no IO
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A listener and the last value it saw below its prefix, which the next change is diffed against.
+     */
+    private final class Subscription {
+
+        private final KeyPath prefix;
+        private final ChangeListener listener;
+
+        // A private copy, or the immutable subtree itself in copy-on-write mode
+        private Object snapshot;
+
+        // Completes once the last queued notification was delivered, keeps them in order
+        private CompletableFuture<Void> delivered = CompletableFuture.completedFuture(null);
+
+        private Subscription(KeyPath prefix, ChangeListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+            this.snapshot = current();
+        }
+
+        private Object current() {
+            Object value = getEntry(prefix);
+            return copyOnWrite ? value : deepCopyValue(value);
+        }
+
+        private void refresh() {
+            Object value = current();
+            List<EntryChange> changes = new ArrayList<>();
+            diff(prefix.toString(), snapshot, value, changes);
+            snapshot = value;
+            if (changes.isEmpty()) {
+                return;
+            }
+            List<EntryChange> delivery = Collections.unmodifiableList(changes);
+            CompletableFuture<Void> next = new CompletableFuture<>();
+            Executor executor = executor();
+            // Chained on completion rather than success, so one failed delivery does not drop every later one
+            delivered.whenComplete((ignored, failure) -> {
+                try {
+                    executor.execute(() -> deliver(delivery, next));
+                } catch (RejectedExecutionException e) {
+                    System.err.println("problem with change listener \n" + Arrays.asList(e.getStackTrace()));
+                    next.complete(null);
+                }
+            });
+            delivered = next;
+        }
+
+        private void deliver(List<EntryChange> delivery, CompletableFuture<Void> done) {
+            try {
+                listener.onChange(delivery);
+            } catch (RuntimeException e) {
+                System.err.println("problem with change listener \n" + Arrays.asList(e.getStackTrace()));
+            } catch (Error e) {
+                System.err.println("problem with change listener \n" + Arrays.asList(e.getStackTrace()));
+                throw e;
+            } finally {
+                done.complete(null);
+            }
+        }
+    }
+
+    // The dumped YAML of a top-level section and the value it was dumped from
+    private record Fragment(Object value, String yaml) {
+    }
+
+    // The bytes read from the file, their SHA-256 and the file's attributes, null if the file does not exist
+    private record FileContent(byte[] bytes, byte[] hash, BasicFileAttributes attributes) {
+    }
+
+    // The data parsed while reading the file and the file's size
+    private record ParsedContent(Map<String, Object> data, long size) {
+    }
+
+    // A dumped YAML document, the version it was dumped at, how long dumping it took and the nodes it holds
+    private record Dump(byte[] content, long version, long nanos, long nodes) {
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+        void apply() throws IOException;
+    }
+
+    // Lazily started daemon thread shared by every write-behind instance
+    private static final class Flusher {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PottySnake-Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
@@ -0,0 +1,80 @@
+package ir.mehran1022.api;
+
+/**
+ * Receives what a {@link PottySnake} instance spends its time and IO on, set through
+ * {@link PottySnakeOptions#getMetrics()}. Every method has an empty default, so an implementation only
+ * overrides what it records. Methods are called on the thread doing the work, often under the instance's
+ * monitor, and must return quickly.
+ *
+ * <p>With the default {@link #NONE} the instance does not even read the clock, so metrics cost nothing
+ * unless they are enabled. {@link InMemoryMetrics} keeps counters and latency histograms, and
+ * {@link LoggingMetrics} logs a summary of them periodically.</p>
+ *
+ * @author Mehran1022
+ */
+public interface PottySnakeMetrics {
+
+    /**
+     * Records nothing, the default.
+     */
+    PottySnakeMetrics NONE = new PottySnakeMetrics() {
+    };
+
+    /**
+     * Called after the file was loaded or reloaded.
+     *
+     * @param readNanos  Time spent reading the file, zero if it was parsed while being read.
+     * @param parseNanos Time spent parsing it, or reading its snapshot, and replaying the journal.
+     * @param bytes      The size of the file.
+     */
+    default void loaded(long readNanos, long parseNanos, long bytes) {
+    }
+
+    /**
+     * Called after a save wrote the file.
+     *
+     * @param dumpNanos  Time spent dumping the data to YAML.
+     * @param writeNanos Time spent writing and replacing the file.
+     * @param bytes      The size of the written content.
+     */
+    default void saved(long dumpNanos, long writeNanos, long bytes) {
+    }
+
+    /**
+     * Called when a save dumped content the file already holds, so nothing was written.
+     */
+    default void saveSkipped() {
+    }
+
+    /**
+     * Called when a save was folded into another one, either queued behind it or overtaken by it.
+     */
+    default void saveCoalesced() {
+    }
+
+    /**
+     * Called after an entry was looked up, by {@code getEntry} or a typed getter.
+     *
+     * @param nanos Time spent on the lookup.
+     */
+    default void lookedUp(long nanos) {
+    }
+
+    /**
+     * Called after {@code setEntry}, {@code addEntry}, {@code removeEntry}, {@code createSection},
+     * {@code createList} or {@code renameSection} changed the data.
+     *
+     * @param nanos Time spent on the mutation, including the save if it ran in the foreground.
+     */
+    default void mutated(long nanos) {
+    }
+
+    /**
+     * Called after a load or a write with the current size of the data.
+     *
+     * @param sections The number of top-level sections.
+     * @param bytes    The size of the file.
+     */
+    default void sized(int sections, long bytes) {
+    }
+}
@@ -0,0 +1,113 @@
+package ir.mehran1022.api;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tuning options for a {@link PottySnake} instance.
+ * Every option has a default that matches the plain {@link PottySnake#PottySnake(String)} behaviour,
+ * so only the options that matter to the caller need to be set.
+ * Options are equal if every option is, the executor by identity.
+ *
+ * <pre>{@code
+ * PottySnakeOptions options = PottySnakeOptions.builder()
+ *         .flushInterval(Duration.ofSeconds(1))
+ *         .build();
+ * }</pre>
+ *
+ * @author Mehran1022
+ */
+@Getter
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public final class PottySnakeOptions {
+
+    // If true, a missing file loads as empty and is created by the first save instead of failing
+    private final boolean createIfMissing;
+
+    // If true, the file is rewritten in PottySnake's format right after it is opened, unless it already is
+    @Builder.Default
+    private final boolean normalizeOnOpen = true;
+
+    // How long mutations may stay in memory before the file is rewritten, ZERO saves on every mutation
+    @Builder.Default
+    private final Duration flushInterval = Duration.ZERO;
+
+    // If true, load and save run on a background thread and return right away
+    private final boolean threadSafe;
+
+    // Runs the thread-safe loads and saves, one task of an instance at a time. Null lets the instance own a single IO thread
+    private final ExecutorService executor;
+
+    // If true and running on Java 21+, the instance owned executor uses virtual threads
+    private final boolean virtualThreads;
+
+    // If true, the data is an immutable tree swapped in as a whole, readers never lock or see partial writes
+    private final boolean copyOnWrite;
+
+    // If true, top-level sections are only parsed once they are first read
+    private final boolean lazySections;
+
+    // If true, the parsed file is cached in <file>.psnap, which is loaded instead while the file is unchanged
+    private final boolean snapshot;
+
+    // If true, saves triggered by mutations only dump the top-level sections that changed since the last save.
+    // Off by default: a section a mutator did not touch keeps its old YAML, even if it shares a node with a touched
+    // one through an anchor, or a map returned by getEntry was edited in place
+    private final boolean incrementalSave;
+
+    // If true, the data is reloaded whenever the file is changed by someone else
+    private final boolean watch;
+
+    // How long a watched file has to be quiet after a change before it is reloaded
+    @Builder.Default
+    private final Duration watchDebounce = Duration.ofMillis(200);
+
+    // What save forces to disk before it returns
+    @Builder.Default
+    private final DurabilityPolicy durability = DurabilityPolicy.NONE;
+
+    // If true, saves lock <file>.lock against other processes that save the file with this option
+    private final boolean fileLock;
+
+    // What a save does when someone else changed the file since it was last read or written
+    @Builder.Default
+    private final ConflictPolicy conflictPolicy = ConflictPolicy.OVERWRITE;
+
+    // Receives the latencies, sizes and counts of the instance's loads, saves, lookups and mutations
+    @Builder.Default
+    private final PottySnakeMetrics metrics = PottySnakeMetrics.NONE;
+
+    // If true, mutations are appended to <file>.journal and the file is only rewritten on compaction
+    private final boolean journal;
+
+    // The journal is compacted into the file once it grows past this many bytes
+    @Builder.Default
+    private final long journalCompactionSize = 4L * 1024 * 1024;
+
+    // The journal is compacted on the next mutation once it is older than this, ZERO disables the check
+    @Builder.Default
+    private final Duration journalCompactionInterval = Duration.ofMinutes(5);
+
+    /**
+     * Returns the options used when none are given.
+     *
+     * @return The default options.
+     */
+    public static PottySnakeOptions defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Checks if mutations are written behind, i.e. coalesced and flushed on a schedule.
+     *
+     * @return true if a positive flush interval is configured, false otherwise.
+     */
+    public boolean isWriteBehind() {
+        return flushInterval != null && !flushInterval.isNegative() && !flushInterval.isZero();
+    }
+}
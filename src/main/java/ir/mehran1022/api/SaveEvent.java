@@ -0,0 +1,46 @@
+package ir.mehran1022.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event for every save that reached the file, disabled unless a recording enables
+ * {@code ir.mehran1022.PottySnakeSave}. The duration covers writing the file, including waiting for the
+ * write lock and the lock file. Dumping the data ran before it and is reported separately.
+ *
+ * @author Mehran1022
+ */
+@Name("ir.mehran1022.PottySnakeSave")
+@Label("PottySnake Save")
+@Category("PottySnake")
+@Description("In-memory YAML data was written to its file")
+@Enabled(false)
+@StackTrace(false)
+final class SaveEvent extends Event {
+
+    @Label("File")
+    String filePath;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Nodes")
+    @Description("Entries and list elements in the saved data, a lazy section that was not parsed counts as one")
+    long nodes;
+
+    @Label("Dump Duration")
+    @Timespan
+    long dumpDuration;
+
+    @Label("Written")
+    @Description("False if the file already held the dumped content, or a newer save overtook this one")
+    boolean written;
+}
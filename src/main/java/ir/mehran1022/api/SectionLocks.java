@@ -0,0 +1,129 @@
+package ir.mehran1022.api;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks that let readers of a thread-safe instance run alongside writers of other top-level sections.
+ * Every section hashes to one of a fixed number of stripes, and a separate root lock covers adding or
+ * removing top-level keys. Readers try an optimistic read first and only take the read locks if a writer
+ * got in the way.
+ *
+ * <p>Only readers gain from the stripes. Writers are ordered by the instance monitor in every mode, also in
+ * write-behind and journal mode where a mutation does not dump. Besides the dumps, the monitor orders the
+ * journal records, the dirty flag and the scheduled flush, the sections touched since the last save and batch
+ * rollbacks, which writers of different sections all share. The write locks are therefore never contended
+ * between writers, only between a writer and the readers of the same section.</p>
+ *
+ * @author Mehran1022
+ */
+final class SectionLocks {
+
+    // A power of two, so a stripe is picked by masking the spread hash
+    private static final int STRIPES = 64;
+
+    // Releases nothing, returned when a writer needs no lock
+    private static final Held NONE = () -> {
+    };
+
+    private final StampedLock root = new StampedLock();
+    private final StampedLock[] stripes = new StampedLock[STRIPES];
+
+    SectionLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Returns the no-op lock, for instances that are not thread-safe.
+     */
+    static Held none() {
+        return NONE;
+    }
+
+    /**
+     * Runs a read of a section, optimistically if no writer of the section or the root interferes.
+     *
+     * @param section The top-level key the read starts at.
+     * @param read    Walks the data, may be retried under the read locks.
+     * @return The result of the read.
+     */
+    <T> T read(Object section, Supplier<T> read) {
+        StampedLock stripe = stripe(section);
+        long rootStamp = root.tryOptimisticRead();
+        long stamp = stripe.tryOptimisticRead();
+        if (rootStamp != 0 && stamp != 0) {
+            try {
+                T result = read.get();
+                if (root.validate(rootStamp) && stripe.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A map caught mid-resize, the result is discarded anyway and the read retried under the locks
+            }
+        }
+
+        rootStamp = root.readLock();
+        stamp = stripe.readLock();
+        try {
+            return read.get();
+        } finally {
+            stripe.unlockRead(stamp);
+            root.unlockRead(rootStamp);
+        }
+    }
+
+    /**
+     * Locks a section for an in-place change.
+     *
+     * @param section    The top-level key the change is made under.
+     * @param structural True if the change adds or removes the top-level key itself.
+     * @return The held locks, to be closed once the change is complete.
+     */
+    Held write(Object section, boolean structural) {
+        StampedLock stripe = stripe(section);
+        long rootStamp = structural ? root.writeLock() : 0;
+        long stamp = stripe.writeLock();
+        return () -> {
+            stripe.unlockWrite(stamp);
+            if (structural) {
+                root.unlockWrite(rootStamp);
+            }
+        };
+    }
+
+    /**
+     * Locks every section and the root, for changes that may touch any of them, e.g. rolling back a batch.
+     *
+     * @return The held locks, to be closed once the change is complete.
+     */
+    Held writeAll() {
+        long rootStamp = root.writeLock();
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = stripes[i].writeLock();
+        }
+        return () -> {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlockWrite(stamps[i]);
+            }
+            root.unlockWrite(rootStamp);
+        };
+    }
+
+    private StampedLock stripe(Object section) {
+        int hash = Objects.hashCode(section);
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Write locks held by a mutator, released by {@link #close()}.
+     */
+    @FunctionalInterface
+    interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
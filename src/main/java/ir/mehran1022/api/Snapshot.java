@@ -0,0 +1,322 @@
+package ir.mehran1022.api;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A binary copy of a parsed YAML file kept next to it as {@code <file>.psnap}, which loads several times
+ * faster than parsing the YAML again. The snapshot names the YAML content it was taken from by its size and
+ * SHA-256, so it is only used while the file still holds exactly that content.
+ *
+ * <p>The snapshot is read through a memory mapping. Values are tagged with one byte, lengths and small
+ * integers are varints, and map keys are written once into a string table and referenced by index.</p>
+ *
+ * @author Mehran1022
+ */
+final class Snapshot {
+
+    private static final int MAGIC = 0x50534e50; // PSNP
+    private static final byte FORMAT = 1;
+
+    // Value tags
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte BIG_INTEGER = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte KEY = 8;
+    private static final byte LIST = 9;
+    private static final byte MAP = 10;
+    private static final byte SET = 11;
+    private static final byte DATE = 12;
+    private static final byte BINARY = 13;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Returns the snapshot path used for the given YAML file.
+     */
+    static Path pathFor(String filePath) {
+        return Path.of(filePath + ".psnap");
+    }
+
+    /**
+     * Reads a snapshot if it was taken from the given YAML content.
+     *
+     * @param path The snapshot file.
+     * @param size The size of the YAML content.
+     * @param hash The SHA-256 of the YAML content.
+     * @return The parsed tree, or null if the snapshot is missing, stale or damaged.
+     * @throws IOException If the snapshot exists but cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> read(Path path, long size, byte[] hash) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.get() != FORMAT || buffer.getLong() != size) {
+                return null;
+            }
+            byte[] snapshotHash = new byte[hash.length];
+            buffer.get(snapshotHash);
+            if (!Arrays.equals(snapshotHash, hash)) {
+                return null; // Taken from other content
+            }
+
+            String[] keys = new String[readCount(buffer)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = readString(buffer);
+            }
+            Object root = readValue(buffer, keys);
+            return root instanceof Map ? (Map<String, Object>) root : null;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null; // Truncated or corrupt, the YAML is parsed instead
+        }
+    }
+
+    /**
+     * Encodes a parsed tree into a snapshot.
+     *
+     * @param data The tree parsed from the YAML content.
+     * @param size The size of the YAML content.
+     * @param hash The SHA-256 of the YAML content.
+     * @return The snapshot, or null if the tree holds a value that has no encoding, e.g. a custom tagged object,
+     *         or a map, list or set reached twice through an alias, which a snapshot would load as two copies.
+     */
+    static byte[] encode(Map<String, Object> data, long size, byte[] hash) {
+        Encoder body = new Encoder();
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        if (!body.writeValue(data, keys)) {
+            return null;
+        }
+
+        Encoder header = new Encoder();
+        header.ensure(13 + hash.length);
+        header.buffer.putInt(MAGIC).put(FORMAT).putLong(size).put(hash);
+        header.writeVarint(keys.size());
+        for (String key : keys.keySet()) {
+            header.writeString(key);
+        }
+
+        byte[] snapshot = Arrays.copyOf(header.buffer.array(), header.buffer.position() + body.buffer.position());
+        System.arraycopy(body.buffer.array(), 0, snapshot, header.buffer.position(), body.buffer.position());
+        return snapshot;
+    }
+
+    private static Object readValue(ByteBuffer buffer, String[] keys) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                int zigzag = readVarint(buffer);
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            case LONG:
+                return buffer.getLong();
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(buffer));
+            case DOUBLE:
+                return buffer.getDouble();
+            case STRING:
+                return readString(buffer);
+            case KEY:
+                return keys[readVarint(buffer)];
+            case LIST: {
+                int count = readCount(buffer);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(buffer, keys));
+                }
+                return list;
+            }
+            case MAP: {
+                int count = readCount(buffer);
+                Map<Object, Object> map = new LinkedHashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+                for (int i = 0; i < count; i++) {
+                    map.put(readValue(buffer, keys), readValue(buffer, keys));
+                }
+                return map;
+            }
+            case SET: {
+                int count = readCount(buffer);
+                Set<Object> set = new LinkedHashSet<>(Math.max(16, (int) (count / 0.75f) + 1));
+                for (int i = 0; i < count; i++) {
+                    set.add(readValue(buffer, keys));
+                }
+                return set;
+            }
+            case DATE:
+                return new Date(buffer.getLong());
+            case BINARY:
+                return readBytes(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown snapshot tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // Every element takes at least one byte, so a larger count can only come from a damaged snapshot
+    private static int readCount(ByteBuffer buffer) {
+        int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed count " + count);
+        }
+        return count;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte next = buffer.get();
+            value |= (next & 0x7f) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    // A growable buffer for the snapshot being written
+    private static final class Encoder {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        // Every collection written so far, by identity, so shared and recursive nodes are detected
+        private final Set<Object> written = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private boolean writeValue(Object value, Map<String, Integer> keys) {
+            if ((value instanceof Collection || value instanceof Map) && !written.add(value)) {
+                return false; // Shared through an alias, or recursive
+            }
+            if (value == null) {
+                writeTag(NULL);
+            } else if (value instanceof Boolean) {
+                writeTag((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer) {
+                int number = (Integer) value;
+                writeTag(INT);
+                writeVarint((number << 1) ^ (number >> 31));
+            } else if (value instanceof Long) {
+                writeTag(LONG);
+                ensure(8);
+                buffer.putLong((Long) value);
+            } else if (value instanceof BigInteger) {
+                writeTag(BIG_INTEGER);
+                writeBytes(((BigInteger) value).toByteArray());
+            } else if (value instanceof Double) {
+                writeTag(DOUBLE);
+                ensure(8);
+                buffer.putDouble((Double) value);
+            } else if (value instanceof String) {
+                writeTag(STRING);
+                writeString((String) value);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeTag(LIST);
+                writeVarint(list.size());
+                for (Object element : list) {
+                    if (!writeValue(element, keys)) {
+                        return false;
+                    }
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeTag(MAP);
+                writeVarint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (entry.getKey() instanceof String) {
+                        writeTag(KEY);
+                        writeVarint(keys.computeIfAbsent((String) entry.getKey(), key -> keys.size()));
+                    } else if (!writeValue(entry.getKey(), keys)) {
+                        return false;
+                    }
+                    if (!writeValue(entry.getValue(), keys)) {
+                        return false;
+                    }
+                }
+            } else if (value instanceof Set) {
+                Set<?> set = (Set<?>) value;
+                writeTag(SET);
+                writeVarint(set.size());
+                for (Object element : set) {
+                    if (!writeValue(element, keys)) {
+                        return false;
+                    }
+                }
+            } else if (value.getClass() == Date.class) {
+                writeTag(DATE);
+                ensure(8);
+                buffer.putLong(((Date) value).getTime());
+            } else if (value instanceof byte[]) {
+                writeTag(BINARY);
+                writeBytes((byte[]) value);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private void writeTag(byte tag) {
+            ensure(1);
+            buffer.put(tag);
+        }
+
+        private void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                buffer.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+                ByteBuffer grown = ByteBuffer.allocate(capacity);
+                buffer.flip();
+                buffer = grown.put(buffer);
+            }
+        }
+    }
+}
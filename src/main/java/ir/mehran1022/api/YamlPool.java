@@ -0,0 +1,94 @@
+package ir.mehran1022.api;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The configured {@link Yaml} instances shared by every PottySnake in the JVM.
+ * A Yaml is not thread-safe, so each load or dump borrows one for its duration, which lets any number of
+ * files be loaded and saved in parallel without building a Yaml per call. Idle instances are kept up to the
+ * number of processors, a burst beyond that creates extra ones that are dropped when returned.
+ *
+ * <pre>{@code
+ * Yaml yaml = YamlPool.borrow();
+ * try {
+ *     return yaml.dump(data);
+ * } finally {
+ *     YamlPool.release(yaml);
+ * }
+ * }</pre>
+ *
+ * @author Mehran1022
+ */
+final class YamlPool {
+
+    private static final int MAX_IDLE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final Queue<Yaml> IDLE = new ConcurrentLinkedQueue<>();
+
+    // Tracked separately, ConcurrentLinkedQueue.size() walks the whole queue
+    private static final AtomicInteger IDLE_COUNT = new AtomicInteger();
+
+    private YamlPool() {
+    }
+
+    /**
+     * Takes an idle instance, or creates one if none is idle.
+     *
+     * @return An instance only the caller uses until it is released.
+     */
+    static Yaml borrow() {
+        Yaml yaml = IDLE.poll();
+        if (yaml == null) {
+            return newYaml();
+        }
+        IDLE_COUNT.decrementAndGet();
+        return yaml;
+    }
+
+    /**
+     * Returns a borrowed instance. It must not be used afterward.
+     *
+     * @param yaml The instance returned by {@link #borrow()}.
+     */
+    static void release(Yaml yaml) {
+        if (IDLE_COUNT.incrementAndGet() <= MAX_IDLE) {
+            IDLE.offer(yaml); // Every load and dump starts from scratch, so the instance holds no state
+        } else {
+            IDLE_COUNT.decrementAndGet();
+        }
+    }
+
+    /**
+     * Creates an instance configured like the pooled ones, i.e. with PottySnake's loader and dumper options.
+     */
+    static Yaml newYaml() {
+        DumperOptions dumperOptions = getDumperOptions();
+        LoaderOptions loaderOptions = getLoaderOptions();
+        return new Yaml(new Constructor(loaderOptions), new Representer(dumperOptions), dumperOptions, loaderOptions);
+    }
+
+    private static LoaderOptions getLoaderOptions() {
+        final LoaderOptions loaderOptions = new LoaderOptions();
+        loaderOptions.setCodePointLimit(Integer.MAX_VALUE); // The default 3 MB limit guards untrusted input, these are local files
+        return loaderOptions;
+    }
+
+    private static DumperOptions getDumperOptions() {
+        final DumperOptions dumperOptions = new DumperOptions();
+        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        dumperOptions.setPrettyFlow(true);
+        dumperOptions.setIndent(4);
+        dumperOptions.setCanonical(false);
+        dumperOptions.setAllowReadOnlyProperties(false);
+        dumperOptions.setLineBreak(DumperOptions.LineBreak.UNIX);
+        return dumperOptions;
+    }
+}
@@ -0,0 +1,422 @@
+package ir.mehran1022.api;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only queries on YAML files too large to load, e.g. generated inventories of several gigabytes.
+ * The file is streamed through SnakeYAML's event parser from a buffered reader, and only the entry being
+ * looked up is composed into Java objects, so memory stays constant apart from the returned values.
+ * Parsing stops as soon as the entry is found.
+ *
+ * <pre>{@code
+ * Object region = YamlStream.getEntry("inventory.yaml", "hosts.web-042.region");
+ * YamlStream.forEachEntry("inventory.yaml", "hosts", (key, host) -> index(key, host));
+ * }</pre>
+ *
+ * <p>Keys are matched like {@link PottySnake#getEntry(String)} matches them, only string keys match a segment,
+ * and merge keys ({@code <<}) are followed. Unlike a full load, the first occurrence of a duplicated key is used.
+ * Anchored nodes are kept while streaming, so aliases resolve even if the anchor is outside the entry, at the
+ * cost of holding the anchored nodes. Only the first document of a file is read.</p>
+ *
+ * @author Mehran1022
+ */
+public final class YamlStream {
+
+    // Read ahead of the parser, which only buffers a little itself
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private YamlStream() {
+    }
+
+    /**
+     * Retrieves a value from a YAML file without loading the file.
+     *
+     * @param filePath The path to the YAML file.
+     * @param key      The key to retrieve the value for, which can be a simple or nested key.
+     * @return The value, or null if the key does not exist.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Object getEntry(String filePath, String key) throws IOException {
+        return getEntry(filePath, KeyPath.cached(key));
+    }
+
+    /**
+     * Retrieves a value from a YAML file without loading the file, using a compiled key path.
+     *
+     * @param filePath The path to the YAML file.
+     * @param path     The path for the entry.
+     * @return The value, or null if the key does not exist.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Object getEntry(String filePath, KeyPath path) throws IOException {
+        try (Cursor cursor = new Cursor(filePath)) {
+            if (!cursor.descend(path, path.size() - 1) || !cursor.findKey(path.last())) {
+                return null;
+            }
+            return cursor.compose();
+        }
+    }
+
+    /**
+     * Passes every entry of a map in a YAML file to the action, one at a time and without loading the file.
+     * Only the entry being passed is held in memory.
+     *
+     * @param filePath The path to the YAML file.
+     * @param prefix   The key of the map, which can be a simple or nested key.
+     * @param action   Receives the full key and the value of every entry, in file order.
+     *                 Nothing is passed if the prefix does not exist or is not a map. The entries of a merge key
+     *                 are passed where it appears, so an entry may be passed twice and the later one wins.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void forEachEntry(String filePath, String prefix, BiConsumer<String, Object> action) throws IOException {
+        forEachEntry(filePath, KeyPath.cached(prefix), action);
+    }
+
+    /**
+     * Passes every entry of a map in a YAML file to the action, using a compiled key path.
+     *
+     * @param filePath The path to the YAML file.
+     * @param prefix   The path of the map.
+     * @param action   Receives the full key and the value of every entry, in file order.
+     * @throws IOException If the file cannot be read.
+     * @see #forEachEntry(String, String, BiConsumer)
+     */
+    public static void forEachEntry(String filePath, KeyPath prefix, BiConsumer<String, Object> action) throws IOException {
+        try (Cursor cursor = new Cursor(filePath)) {
+            if (!cursor.descend(prefix, prefix.size())) {
+                return;
+            }
+            forEach(cursor, prefix + ".", action);
+        }
+    }
+
+    /**
+     * Passes every top-level entry of a YAML file to the action, one at a time and without loading the file.
+     *
+     * @param filePath The path to the YAML file.
+     * @param action   Receives the key and the value of every top-level entry, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void forEachEntry(String filePath, BiConsumer<String, Object> action) throws IOException {
+        try (Cursor cursor = new Cursor(filePath)) {
+            if (cursor.enterRoot()) {
+                forEach(cursor, "", action);
+            }
+        }
+    }
+
+    // Passes the entries of the map the cursor just entered
+    private static void forEach(Cursor cursor, String keyPrefix, BiConsumer<String, Object> action) throws IOException {
+        while (true) {
+            Event key = cursor.next();
+            if (key.is(Event.ID.MappingEnd)) {
+                return;
+            }
+            if (cursor.isMergeKey(key)) {
+                // Passed where the merge key is, the first merged map last, so later entries win like in a load
+                List<List<Event>> merged = cursor.captureMerge();
+                for (int i = merged.size() - 1; i >= 0; i--) {
+                    cursor.replay(merged.get(i));
+                    forEach(cursor, keyPrefix, action);
+                }
+            } else if (key instanceof ScalarEvent) {
+                action.accept(keyPrefix + ((ScalarEvent) key).getValue(), cursor.compose());
+            } else {
+                cursor.skip(key); // A complex key, it has no dot-notation name
+                cursor.skip(cursor.next());
+            }
+        }
+    }
+
+    /**
+     * Walks the event stream of one file, expanding aliases on request and remembering the events of every
+     * anchored node it passes.
+     */
+    private static final class Cursor implements AutoCloseable {
+
+        private final Reader reader;
+        private final Yaml yaml;
+        private final Iterator<Event> events;
+        private final Resolver resolver = new Resolver();
+
+        // Expanded aliases, replayed before the stream continues
+        private final Deque<Event> pending = new ArrayDeque<>();
+
+        // The events of every anchored node seen so far, by anchor
+        private final Map<String, List<Event>> anchors = new HashMap<>();
+
+        // Anchored nodes that are still being recorded, with their current depth
+        private final List<Recording> recordings = new ArrayList<>();
+
+        private DocumentStartEvent documentStart;
+
+        private Cursor(String filePath) throws IOException {
+            this.reader = new UnicodeReader(new BufferedInputStream(Files.newInputStream(Path.of(filePath)), BUFFER_SIZE));
+            this.yaml = YamlPool.borrow();
+            this.events = yaml.parse(reader).iterator();
+        }
+
+        /**
+         * Moves into the map at the given depth of the path.
+         *
+         * @param depth How many segments of the path to follow, zero stays at the root.
+         * @return true if every map on the way exists, positioned before the first key of the last one.
+         */
+        private boolean descend(KeyPath path, int depth) throws IOException {
+            if (!enterRoot()) {
+                return false;
+            }
+            for (int level = 0; level < depth; level++) {
+                if (!enterKey(path.segment(level))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean enterRoot() throws IOException {
+            while (events.hasNext() || !pending.isEmpty()) {
+                Event event = next();
+                if (event instanceof DocumentStartEvent) {
+                    documentStart = (DocumentStartEvent) event;
+                } else if (!event.is(Event.ID.StreamStart)) {
+                    return enterMap(event);
+                }
+            }
+            return false; // An empty file
+        }
+
+        // Finds the key in the current map and moves into its value, if that is a map
+        private boolean enterKey(String segment) throws IOException {
+            return findKey(segment) && enterMap(nextNode());
+        }
+
+        /**
+         * Finds a key in the map the cursor is in. Keys of merged maps ({@code <<}) are only searched once
+         * the map ended without the key, since an explicit key overrides a merged one wherever it appears.
+         *
+         * @return true if found, positioned before its value, false if the map was consumed without finding it.
+         */
+        private boolean findKey(String segment) throws IOException {
+            List<List<Event>> merged = new ArrayList<>();
+            while (true) {
+                Event key = next();
+                if (key.is(Event.ID.MappingEnd)) {
+                    break;
+                }
+                if (matches(key, segment)) {
+                    return true;
+                }
+                if (isMergeKey(key)) {
+                    merged.addAll(captureMerge());
+                } else {
+                    skip(key);
+                    skip(next());
+                }
+            }
+            for (List<Event> map : merged) {
+                replay(map);
+                if (findKey(segment)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isMergeKey(Event key) {
+            return key instanceof ScalarEvent && ((ScalarEvent) key).getValue().equals("<<")
+                    && ((ScalarEvent) key).getTag() == null && ((ScalarEvent) key).getScalarStyle() == DumperOptions.ScalarStyle.PLAIN
+                    && resolver.resolve(NodeId.scalar, "<<", true).equals(Tag.MERGE);
+        }
+
+        /**
+         * Reads the value of a merge key, a map or a sequence of maps, with aliases expanded.
+         *
+         * @return The events of every merged map, in the order they take precedence.
+         */
+        private List<List<Event>> captureMerge() throws IOException {
+            List<List<Event>> maps = new ArrayList<>();
+            Event value = nextNode();
+            if (value.is(Event.ID.MappingStart)) {
+                maps.add(capture(value));
+            } else if (value.is(Event.ID.SequenceStart)) {
+                for (Event element = nextNode(); !element.is(Event.ID.SequenceEnd); element = nextNode()) {
+                    if (element.is(Event.ID.MappingStart)) {
+                        maps.add(capture(element));
+                    } else {
+                        skip(element);
+                    }
+                }
+            } else {
+                skip(value);
+            }
+            return maps;
+        }
+
+        // Reads the rest of a node whose first event was already read
+        private List<Event> capture(Event first) throws IOException {
+            List<Event> node = new ArrayList<>();
+            node.add(first);
+            int depth = depthChange(first);
+            while (depth > 0) {
+                Event event = next();
+                node.add(event);
+                depth += depthChange(event);
+            }
+            return node;
+        }
+
+        // Replays a captured map and moves into it
+        private void replay(List<Event> map) throws IOException {
+            for (int i = map.size() - 1; i >= 0; i--) {
+                pending.addFirst(map.get(i));
+            }
+            next();
+        }
+
+        private boolean enterMap(Event node) throws IOException {
+            if (node instanceof AliasEvent) {
+                node = expand((AliasEvent) node);
+            }
+            return node.is(Event.ID.MappingStart);
+        }
+
+        private boolean matches(Event key, String segment) {
+            return key instanceof ScalarEvent && ((ScalarEvent) key).getValue().equals(segment)
+                    && LazyMap.isStringKey((ScalarEvent) key, resolver);
+        }
+
+        /**
+         * Composes the next node into Java objects, by emitting its events as a document of their own and
+         * loading that. Aliases to anchors outside the node are expanded, so the document is self-contained.
+         */
+        private Object compose() throws IOException {
+            DumperOptions dumperOptions = new DumperOptions();
+            dumperOptions.setWidth(Integer.MAX_VALUE);
+            StringWriter document = new StringWriter();
+            Emitter emitter = new Emitter(document, dumperOptions);
+            emitter.emit(new StreamStartEvent(null, null));
+            emitter.emit(new DocumentStartEvent(null, null, false, null,
+                    documentStart == null ? null : documentStart.getTags()));
+
+            Set<String> defined = new HashSet<>();
+            int depth = 0;
+            do {
+                Event event = next();
+                if (event instanceof AliasEvent && !defined.contains(((AliasEvent) event).getAnchor())) {
+                    event = expand((AliasEvent) event);
+                }
+                if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+                    defined.add(((NodeEvent) event).getAnchor());
+                }
+                emitter.emit(event);
+                depth += depthChange(event);
+            } while (depth > 0);
+
+            emitter.emit(new DocumentEndEvent(null, null, false));
+            emitter.emit(new StreamEndEvent(null, null));
+            return yaml.load(document.toString());
+        }
+
+        // Skips the rest of a node whose first event was already read
+        private void skip(Event first) throws IOException {
+            int depth = depthChange(first);
+            while (depth > 0) {
+                depth += depthChange(next());
+            }
+        }
+
+        private Event nextNode() throws IOException {
+            Event event = next();
+            return event instanceof AliasEvent ? expand((AliasEvent) event) : event;
+        }
+
+        // Replays the anchored node instead of the alias, and returns its first event
+        private Event expand(AliasEvent alias) throws IOException {
+            List<Event> node = anchors.get(alias.getAnchor());
+            if (node == null) {
+                throw new IllegalStateException("Alias *" + alias.getAnchor() + " refers to an unknown anchor");
+            }
+            for (int i = node.size() - 1; i >= 0; i--) {
+                pending.addFirst(node.get(i));
+            }
+            return next();
+        }
+
+        private Event next() throws IOException {
+            Event event = pending.isEmpty() ? events.next() : pending.poll();
+            if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null && !(event instanceof AliasEvent)) {
+                recordings.add(new Recording(((NodeEvent) event).getAnchor()));
+            }
+            for (int i = recordings.size() - 1; i >= 0; i--) {
+                Recording recording = recordings.get(i);
+                recording.events.add(event);
+                recording.depth += depthChange(event);
+                if (recording.depth == 0) {
+                    anchors.put(recording.anchor, recording.events);
+                    recordings.remove(i);
+                }
+            }
+            return event;
+        }
+
+        private static int depthChange(Event event) {
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                return 1;
+            }
+            if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                return -1;
+            }
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            YamlPool.release(yaml);
+            reader.close();
+        }
+    }
+
+    // The events of an anchored node being recorded, complete once its depth drops back to zero
+    private static final class Recording {
+
+        private final String anchor;
+        private final List<Event> events = new ArrayList<>();
+        private int depth;
+
+        private Recording(String anchor) {
+            this.anchor = anchor;
+        }
+    }
+}
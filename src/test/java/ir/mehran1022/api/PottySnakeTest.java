@@ -0,0 +1,111 @@
+package ir.mehran1022.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PottySnakeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void closeWaitsForSavesOnAnExecutorFromTheOptions() throws IOException {
+        Path file = directory.resolve("large.yml");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int key = 0; key < 20_000; key++) {
+                writer.write("key" + key + ": value" + key + "\n"); // Large enough that the save is still running
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            PottySnakeOptions options = PottySnakeOptions.builder()
+                    .threadSafe(true)
+                    .executor(pool)
+                    .normalizeOnOpen(false)
+                    .build();
+            for (int run = 0; run < 5; run++) {
+                try (PottySnake pottySnake = new PottySnake(file.toString(), options)) {
+                    pottySnake.setEntry("marker", run);
+                }
+                assertEquals(run, new PottySnake(file.toString()).getEntry("marker"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void incrementAndGetStoresAnIntegerThatCompareAndSetMatches() throws IOException {
+        Path file = directory.resolve("counter.yml");
+        Files.writeString(file, "counter: 5\n");
+        try (PottySnake pottySnake = new PottySnake(file.toString())) {
+            assertEquals(6, pottySnake.incrementAndGet("counter", 1));
+            assertInstanceOf(Integer.class, pottySnake.getEntry("counter"));
+            assertTrue(pottySnake.compareAndSet("counter", 6, 10));
+            assertTrue(pottySnake.compareAndSet("counter", 10L, 11)); // Integers of other types compare by value
+            assertEquals(11, pottySnake.getEntry("counter"));
+        }
+    }
+
+    @Test
+    void flushWritesInTheForegroundInThreadSafeMode() throws IOException {
+        Path file = directory.resolve("flushed.yml");
+        Files.writeString(file, "key: value\n");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            PottySnakeOptions options = PottySnakeOptions.builder()
+                    .threadSafe(true)
+                    .executor(pool)
+                    .build();
+            try (PottySnake pottySnake = new PottySnake(file.toString(), options)) {
+                pool.execute(() -> sleep(500)); // Keeps the queued save from running before flush returns
+                pottySnake.setEntry("marker", 1);
+                pottySnake.flush();
+                assertEquals(1, new PottySnake(file.toString()).getEntry("marker"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void aListenerThatThrowsStillReceivesLaterChanges() throws Exception {
+        Path file = directory.resolve("subscribed.yml");
+        Files.writeString(file, "key: value\n");
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch secondCall = new CountDownLatch(1);
+        try (PottySnake pottySnake = new PottySnake(file.toString())) {
+            pottySnake.subscribe("key", changes -> {
+                if (calls.incrementAndGet() == 1) {
+                    throw new StackOverflowError("first delivery fails");
+                }
+                secondCall.countDown();
+            });
+            pottySnake.setEntry("key", "first");
+            pottySnake.setEntry("key", "second");
+            assertTrue(secondCall.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}